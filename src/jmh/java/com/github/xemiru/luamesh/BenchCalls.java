@@ -0,0 +1,74 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+/**
+ * Unidirectional binding called by {@link CallBenchmark}
+ * and {@link ErrorBenchmark}, with instance and static
+ * methods of every arity from 0 to 5.
+ *
+ * <p>{@code add} methods take and return primitives,
+ * {@code pass} methods take and return objects.</p>
+ */
+public class BenchCalls {
+
+    static final Object SHARED = new Object();
+
+    public int add0() { return 0; }
+    public int add1(int a) { return a; }
+    public int add2(int a, int b) { return a + b; }
+    public int add3(int a, int b, int c) { return a + b + c; }
+    public int add4(int a, int b, int c, int d) { return a + b + c + d; }
+    public int add5(int a, int b, int c, int d, int e) { return a + b + c + d + e; }
+
+    public Object pass0() { return SHARED; }
+    public Object pass1(Object a) { return a; }
+    public Object pass2(Object a, Object b) { return a; }
+    public Object pass3(Object a, Object b, Object c) { return a; }
+    public Object pass4(Object a, Object b, Object c, Object d) { return a; }
+    public Object pass5(Object a, Object b, Object c, Object d, Object e) { return a; }
+
+    public static int sadd0() { return 0; }
+    public static int sadd1(int a) { return a; }
+    public static int sadd2(int a, int b) { return a + b; }
+    public static int sadd3(int a, int b, int c) { return a + b + c; }
+    public static int sadd4(int a, int b, int c, int d) { return a + b + c + d; }
+    public static int sadd5(int a, int b, int c, int d, int e) { return a + b + c + d + e; }
+
+    public static Object spass0() { return SHARED; }
+    public static Object spass1(Object a) { return a; }
+    public static Object spass2(Object a, Object b) { return a; }
+    public static Object spass3(Object a, Object b, Object c) { return a; }
+    public static Object spass4(Object a, Object b, Object c, Object d) { return a; }
+    public static Object spass5(Object a, Object b, Object c, Object d, Object e) { return a; }
+
+    public void fail() {
+        throw new IllegalStateException("benchmark");
+    }
+
+    public static void sfail() {
+        throw new IllegalStateException("benchmark");
+    }
+
+}
@@ -0,0 +1,55 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+/**
+ * Delegate methods bound to {@link BenchDelegateTarget},
+ * mirroring the instance methods of {@link BenchCalls}.
+ *
+ * <p>Registered by name, so it must not be referenced
+ * anywhere else before {@link LuaMesh#init()}.</p>
+ */
+@LuaType(target = BenchDelegateTarget.class)
+public class BenchDelegate {
+
+    @LuaType public int add0(BenchDelegateTarget self) { return 0; }
+    @LuaType public int add1(BenchDelegateTarget self, int a) { return a; }
+    @LuaType public int add2(BenchDelegateTarget self, int a, int b) { return a + b; }
+    @LuaType public int add3(BenchDelegateTarget self, int a, int b, int c) { return a + b + c; }
+    @LuaType public int add4(BenchDelegateTarget self, int a, int b, int c, int d) { return a + b + c + d; }
+    @LuaType public int add5(BenchDelegateTarget self, int a, int b, int c, int d, int e) { return a + b + c + d + e; }
+
+    @LuaType public Object pass0(BenchDelegateTarget self) { return BenchCalls.SHARED; }
+    @LuaType public Object pass1(BenchDelegateTarget self, Object a) { return a; }
+    @LuaType public Object pass2(BenchDelegateTarget self, Object a, Object b) { return a; }
+    @LuaType public Object pass3(BenchDelegateTarget self, Object a, Object b, Object c) { return a; }
+    @LuaType public Object pass4(BenchDelegateTarget self, Object a, Object b, Object c, Object d) { return a; }
+    @LuaType public Object pass5(BenchDelegateTarget self, Object a, Object b, Object c, Object d, Object e) { return a; }
+
+    @LuaType
+    public void fail(BenchDelegateTarget self) {
+        throw new IllegalStateException("benchmark");
+    }
+
+}
@@ -0,0 +1,59 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+/**
+ * Registers the classes used by benchmarks. Like with the
+ * tests, {@link LuaMesh#init()} can only ever run once per
+ * JVM, so every benchmark shares the same registrations.
+ */
+final class BenchMeshes {
+
+    private static boolean initialized = false;
+
+    private BenchMeshes() {
+    }
+
+    static synchronized void init() {
+        if (initialized) {
+            return;
+        }
+
+        // compare both ways of calling bound methods with -jvmArgsAppend -Dluamesh.directInvokers=true
+        LuaMesh.directInvokers = Boolean.getBoolean("luamesh.directInvokers");
+        LuaMesh.register(BenchLibrary.class, null);
+        LuaMesh.register(BenchCalls.class, null);
+        LuaMesh.register("com.github.xemiru.luamesh.BenchDelegate");
+        LuaMesh.register("com.github.xemiru.luamesh.BenchWoven");
+
+        try {
+            LuaMesh.init();
+        } catch (Throwable e) {
+            throw new IllegalStateException("LuaMesh failed to initialize", e);
+        }
+
+        initialized = true;
+    }
+
+}
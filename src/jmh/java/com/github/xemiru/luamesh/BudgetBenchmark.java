@@ -0,0 +1,95 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of running a script under an
+ * {@link ExecutionBudget}, against running it without one.
+ *
+ * <p>The script mixes plain Lua instructions with calls
+ * into a meshed library, so both the sampled hook and the
+ * check at each method boundary are paid for.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(3)
+public class BudgetBenchmark {
+
+    private static final String SCRIPT = "local s = 0 for i = 1, 1000 do s = lib.add(s, i) % 65536 end return s";
+
+    /**
+     * The sampling interval of the budget, kept apart so
+     * only the budgeted benchmark is run once per value.
+     */
+    @State(Scope.Benchmark)
+    public static class Interval {
+
+        @Param({"100", "1000", "10000"})
+        public int value;
+
+    }
+
+    private Globals globals;
+    private LuaValue script;
+
+    @Setup
+    public void setup() {
+        BenchMeshes.init();
+        this.globals = JsePlatform.standardGlobals();
+        this.globals.set("lib", LuaObjectValue.of(new BenchLibrary()).toLibrary());
+        this.script = this.globals.load(SCRIPT);
+    }
+
+    @Benchmark
+    public Varargs unbudgeted() {
+        return this.script.invoke();
+    }
+
+    @Benchmark
+    public Varargs budgeted(Interval interval) {
+        return new ExecutionBudget(Long.MAX_VALUE, interval.value).call(this.globals, this.script, LuaValue.NONE);
+    }
+
+}
@@ -0,0 +1,153 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of a single call from Lua into a
+ * meshed Java method, against a hand-written
+ * {@link VarArgFunction} doing the same work.
+ *
+ * <p>Functions are invoked the way the Lua interpreter
+ * invokes them, with the object as the first argument
+ * followed by the parameters, so the time spent running
+ * Lua code itself isn't part of the result. Static methods
+ * are called without the object, as with
+ * {@code obj.method(...)}.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CallBenchmark {
+
+    /**
+     * Hand-written equivalent of the methods of
+     * {@link BenchCalls}.
+     */
+    static class Baseline extends VarArgFunction {
+
+        private int arity;
+        private boolean object;
+
+        Baseline(int arity, boolean object) {
+            this.arity = arity;
+            this.object = object;
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            args.checktable(1);
+            if (this.object) {
+                return this.arity == 0 ? LuaObjectValue.of(BenchCalls.SHARED) : args.checktable(2);
+            }
+
+            int sum = 0;
+            for (int i = 0; i < this.arity; i++) {
+                sum += args.checkint(i + 2);
+            }
+
+            return LuaValue.valueOf(sum);
+        }
+
+    }
+
+    @Param({"0", "1", "2", "3", "4", "5"})
+    public int arity;
+
+    @Param({"primitive", "object"})
+    public String kind;
+
+    @Param({"baseline", "instance", "static", "delegate"})
+    public String target;
+
+    private LuaValue func;
+    private Varargs args;
+
+    @Setup
+    public void setup() {
+        BenchMeshes.init();
+        boolean object = this.kind.equals("object");
+        String name = (object ? "pass" : "add") + this.arity;
+
+        LuaValue self;
+        switch (this.target) {
+            case "baseline":
+                self = LuaObjectValue.of(new BenchCalls());
+                this.func = new Baseline(this.arity, object);
+                break;
+            case "static":
+                self = LuaObjectValue.of(new BenchCalls());
+                this.func = self.get("s" + name);
+                break;
+            case "delegate":
+                self = LuaObjectValue.of(new BenchDelegateTarget());
+                this.func = self.get(name);
+                break;
+            default:
+                self = LuaObjectValue.of(new BenchCalls());
+                this.func = self.get(name);
+                break;
+        }
+
+        int first = this.target.equals("static") ? 0 : 1;
+        LuaValue[] values = new LuaValue[this.arity + first];
+        if (first == 1) {
+            values[0] = self;
+        }
+
+        for (int i = first; i < values.length; i++) {
+            values[i] = object ? LuaObjectValue.of(new Object()) : LuaValue.valueOf(i);
+        }
+
+        this.args = LuaValue.varargsOf(values);
+        if (!this.func.isfunction()) {
+            throw new IllegalStateException("no function " + name + " for " + this.target);
+        }
+    }
+
+    @Benchmark
+    public Varargs call() {
+        return this.func.invoke(this.args);
+    }
+
+}
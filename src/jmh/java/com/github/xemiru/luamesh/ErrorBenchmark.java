@@ -0,0 +1,110 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of a Java exception raised by a meshed
+ * method reaching Lua as an error, through
+ * {@link LuaMethodBind#translateException(Throwable)},
+ * against a hand-written {@link VarArgFunction} raising
+ * the same error itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ErrorBenchmark {
+
+    /**
+     * Hand-written equivalent of {@link BenchCalls#fail()}.
+     */
+    static class Baseline extends VarArgFunction {
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            args.checktable(1);
+            throw new LuaError(new IllegalStateException("benchmark").toString());
+        }
+
+    }
+
+    @Param({"baseline", "instance", "static", "delegate"})
+    public String target;
+
+    private LuaValue func;
+    private LuaValue self;
+
+    @Setup
+    public void setup() {
+        BenchMeshes.init();
+        this.self = LuaObjectValue.of(this.target.equals("delegate") ? new BenchDelegateTarget() : new BenchCalls());
+        switch (this.target) {
+            case "baseline":
+                this.func = new Baseline();
+                break;
+            case "static":
+                this.func = this.self.get("sfail");
+                break;
+            default:
+                this.func = this.self.get("fail");
+                break;
+        }
+    }
+
+    @Benchmark
+    public String fail() {
+        try {
+            if (this.target.equals("static")) {
+                this.func.call();
+            } else {
+                this.func.call(this.self);
+            }
+
+            throw new IllegalStateException("call did not fail");
+        } catch (LuaError e) {
+            return e.getMessage();
+        }
+    }
+
+}
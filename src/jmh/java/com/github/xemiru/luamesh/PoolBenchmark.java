@@ -0,0 +1,122 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of running a script against a
+ * meshed library, with runtimes taken from a {@link LuaPool}
+ * versus runtimes created and set up for every run.
+ *
+ * <p>Run {@link #main(String[])} to measure how throughput
+ * scales from one thread up to one per available core.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PoolBenchmark {
+
+    private static final String SCRIPT = "return lib.add(1, 2)";
+
+    private LuaPool pool;
+
+    static void setup(Globals g) {
+        g.set("lib", LuaObjectValue.of(new BenchLibrary()).toLibrary());
+        g.set("run", g.load(SCRIPT));
+    }
+
+    @Setup
+    public void setup() {
+        BenchMeshes.init();
+        this.pool = new LuaPool(Runtime.getRuntime().availableProcessors(), JsePlatform::standardGlobals,
+                PoolBenchmark::setup);
+    }
+
+    @Benchmark
+    public LuaValue pooled() throws InterruptedException {
+        return this.pool.apply(g -> g.get("run").call());
+    }
+
+    @Benchmark
+    public LuaValue fresh() {
+        Globals g = JsePlatform.standardGlobals();
+        setup(g);
+        return g.get("run").call();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        // powers of two, then every core
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> counts = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            counts.add(threads);
+        }
+
+        counts.add(cores);
+
+        List<RunResult> results = new ArrayList<>();
+        for (int threads : counts) {
+            Options opts = new OptionsBuilder()
+                    .include(PoolBenchmark.class.getName())
+                    .threads(threads)
+                    .build();
+
+            results.addAll(new Runner(opts).run());
+        }
+
+        System.out.println();
+        System.out.println("threads  benchmark               ops/ms");
+        for (RunResult result : results) {
+            System.out.println(String.format("%7d  %-20s %10.2f", result.getParams().getThreads(),
+                    result.getParams().getBenchmark().replaceAll(".*\\.", ""),
+                    result.getPrimaryResult().getScore()));
+        }
+    }
+
+}
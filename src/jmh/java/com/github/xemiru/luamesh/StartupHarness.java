@@ -0,0 +1,150 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures what {@link LuaMesh#init()} spends on a large
+ * amount of types, split into its three phases: weaving
+ * with {@link MeshTransformer}, defining the woven classes,
+ * and constructing their {@link LuaMeta}.
+ *
+ * <p>Types are generated by {@link SyntheticTypes} in
+ * inheritance chains of the given depth, each type with
+ * the given amount of methods and fields. LuaMesh.init()
+ * only ever runs once per JVM, so this replays its phases
+ * directly, with every round defining its types in a new
+ * class loader. The first round is the cold start a service
+ * sees; later rounds show the same work once warmed
+ * up.</p>
+ *
+ * <p>Usage: {@code StartupHarness [types] [members]
+ * [depth] [rounds]}, by default 400 types with 20 methods
+ * and 20 fields each, in chains 3 deep, over 5 rounds.</p>
+ */
+public class StartupHarness {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Wall time and allocation of a single phase.
+     */
+    private static class Phase {
+
+        private long nanos;
+        private long bytes;
+        private long start;
+        private long startBytes;
+
+        void begin() {
+            this.startBytes = allocated();
+            this.start = System.nanoTime();
+        }
+
+        void end() {
+            this.nanos += System.nanoTime() - this.start;
+            this.bytes += allocated() - this.startBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%9.2f ms %9.2f MB", this.nanos / 1e6, this.bytes / 1048576.0);
+        }
+
+    }
+
+    private static long allocated() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return 0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int types = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int members = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int depth = Math.max(args.length > 2 ? Integer.parseInt(args[2]) : 3, 1);
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("allocations can't be measured on this JVM; they are reported as 0");
+        }
+
+        // generating the input isn't part of init(), so it's done once up front
+        String[] names = new String[types];
+        byte[][] code = new byte[types][];
+        for (int i = 0; i < types; i++) {
+            names[i] = "com/github/xemiru/luamesh/gen/Startup" + i;
+            String parent = i % depth == 0 ? "java/lang/Object" : names[i - 1];
+            code[i] = SyntheticTypes.generate(names[i], parent, members, members);
+        }
+
+        System.out.println(String.format("%d types, %d methods and %d fields each, %d deep", types, members,
+                members, depth));
+        System.out.println("round  phase          wall time   allocated");
+        for (int round = 1; round <= rounds; round++) {
+            Phase weave = new Phase();
+            Phase define = new Phase();
+            Phase meta = new Phase();
+
+            byte[][] woven = new byte[types][];
+            weave.begin();
+            for (int i = 0; i < types; i++) {
+                ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+                new ClassReader(code[i]).accept(new MeshTransformer(cw), 0);
+                woven[i] = cw.toByteArray();
+            }
+
+            weave.end();
+
+            // parents come before their children, so they're defined and registered first
+            SyntheticTypes.Loader loader = new SyntheticTypes.Loader();
+            Class<?>[] classes = new Class<?>[types];
+            define.begin();
+            for (int i = 0; i < types; i++) {
+                classes[i] = loader.define(names[i].replace('/', '.'), woven[i]);
+            }
+
+            define.end();
+
+            meta.begin();
+            for (int i = 0; i < types; i++) {
+                LuaMesh.registerMeta(classes[i], null);
+            }
+
+            meta.end();
+
+            System.out.println(String.format("%5d  weave       %s", round, weave));
+            System.out.println(String.format("%5d  defineClass %s", round, define));
+            System.out.println(String.format("%5d  LuaMeta     %s", round, meta));
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates synthetic {@link LuaType}-annotated classes for
+ * benchmarks that need more members than anyone would write
+ * by hand.
+ */
+final class SyntheticTypes {
+
+    /**
+     * Class loader able to define the generated classes.
+     */
+    static class Loader extends ClassLoader {
+
+        Loader() {
+            super(SyntheticTypes.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] code) {
+            return defineClass(name, code, 0, code.length);
+        }
+    }
+
+    private static final String LUATYPE = Type.getDescriptor(LuaType.class);
+
+    private SyntheticTypes() {
+    }
+
+    /**
+     * Generates the bytecode of a public LuaType class.
+     *
+     * <p>Fields are public ints named {@code field<i>} and
+     * methods are named {@code method<i>}, taking and
+     * returning an int. All of them are annotated with
+     * LuaType.</p>
+     *
+     * @param name the internal name of the class (e.g.
+     *        java/lang/Integer)
+     * @param superName the internal name of the parent
+     *        class
+     * @param methods the amount of methods to generate
+     * @param fields the amount of fields to generate
+     *
+     * @return the class bytecode
+     */
+    static byte[] generate(String name, String superName, int methods, int fields) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_8, ACC_PUBLIC + ACC_SUPER, name, null, superName, null);
+        cw.visitAnnotation(LUATYPE, true).visitEnd();
+
+        for (int i = 0; i < fields; i++) {
+            FieldVisitor fv = cw.visitField(ACC_PUBLIC, "field" + i, "I", null, null);
+            fv.visitAnnotation(LUATYPE, true).visitEnd();
+            fv.visitEnd();
+        }
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        for (int i = 0; i < methods; i++) {
+            mv = cw.visitMethod(ACC_PUBLIC, "method" + i, "(I)I", null, null);
+            mv.visitAnnotation(LUATYPE, true).visitEnd();
+            mv.visitCode();
+            mv.visitVarInsn(ILOAD, 1);
+            mv.visitInsn(IRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+}
@@ -0,0 +1,267 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call counts and latencies of a single binding between
+ * Java and Lua, kept while {@link LuaMesh#instrument} is
+ * set.
+ *
+ * <p>Counters are striped, so scripts calling the same
+ * binding from different threads don't contend on them.
+ * Latencies are kept in a log-linear histogram: every
+ * power of two is split into {@value #SUB_BUCKETS} buckets,
+ * so recorded values are accurate to within 25%.</p>
+ */
+public class BindingStats {
+
+    private static final int SUB_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // up to 2^40 nanoseconds, a little over 18 minutes
+    private static final int BUCKETS = 40 * SUB_BUCKETS;
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(nanos, 0);
+        }
+
+        int exp = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min((exp - SUB_BITS + 1) * SUB_BUCKETS + sub, BUCKETS - 1);
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    private String name;
+    private boolean lua;
+    private LongAdder calls;
+    private LongAdder errors;
+    private LongAdder total;
+    private LongAccumulator max;
+    private LongAdder[] histogram;
+
+    BindingStats(String name, boolean lua) {
+        this.name = name;
+        this.lua = lua;
+        this.calls = new LongAdder();
+        this.errors = new LongAdder();
+        this.total = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+        this.histogram = new LongAdder[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            this.histogram[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Returns the name of the binding, as the Lua name of
+     * its type and member joined by a period.
+     *
+     * @return the name of the binding
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns whether these are the stats of calls from
+     * Java into Lua implementations of a method, rather
+     * than calls from Lua into Java.
+     *
+     * @return if the binding calls into Lua
+     */
+    public boolean isLua() {
+        return this.lua;
+    }
+
+    void record(long nanos, boolean error) {
+        this.calls.increment();
+        if (error) {
+            this.errors.increment();
+        }
+
+        this.total.add(nanos);
+        this.max.accumulate(nanos);
+        this.histogram[bucket(nanos)].increment();
+    }
+
+    /**
+     * Returns a copy of the current state of these stats.
+     *
+     * <p>Calls being recorded while the snapshot is taken
+     * may be only partially reflected.</p>
+     *
+     * @return a Snapshot of these stats
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.histogram[i].sum();
+        }
+
+        return new Snapshot(this, this.calls.sum(), this.errors.sum(), this.total.sum(), this.max.get(), counts);
+    }
+
+    /**
+     * Clears all counters.
+     */
+    public void reset() {
+        this.calls.reset();
+        this.errors.reset();
+        this.total.reset();
+        this.max.reset();
+        for (LongAdder bucket : this.histogram) {
+            bucket.reset();
+        }
+    }
+
+    /**
+     * An unchanging copy of the state of a
+     * {@link BindingStats}.
+     */
+    public static class Snapshot {
+
+        private String name;
+        private boolean lua;
+        private long calls;
+        private long errors;
+        private long total;
+        private long max;
+        private long[] counts;
+
+        private Snapshot(BindingStats stats, long calls, long errors, long total, long max, long[] counts) {
+            this.name = stats.name;
+            this.lua = stats.lua;
+            this.calls = calls;
+            this.errors = errors;
+            this.total = total;
+            this.max = max;
+            this.counts = counts;
+        }
+
+        /**
+         * @return the name of the binding
+         * @see BindingStats#getName()
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return if the binding calls into Lua
+         * @see BindingStats#isLua()
+         */
+        public boolean isLua() {
+            return this.lua;
+        }
+
+        /**
+         * Returns the amount of calls made through the
+         * binding.
+         *
+         * @return the call count
+         */
+        public long getCalls() {
+            return this.calls;
+        }
+
+        /**
+         * Returns the amount of calls that raised an error.
+         *
+         * @return the error count
+         */
+        public long getErrors() {
+            return this.errors;
+        }
+
+        /**
+         * Returns the mean latency of calls, in
+         * nanoseconds.
+         *
+         * @return the mean latency, or 0 if there were no
+         *         calls
+         */
+        public double getMean() {
+            return this.calls == 0 ? 0 : (double) this.total / this.calls;
+        }
+
+        /**
+         * Returns the highest latency of any call, in
+         * nanoseconds.
+         *
+         * @return the maximum latency
+         */
+        public long getMax() {
+            return this.max;
+        }
+
+        /**
+         * Returns the latency at the given percentile, in
+         * nanoseconds, as the upper bound of the histogram
+         * bucket it falls in.
+         *
+         * @param percentile the percentile, between 0 and
+         *        100
+         *
+         * @return the latency at the percentile, or 0 if
+         *         there were no calls
+         */
+        public long getPercentile(double percentile) {
+            long seen = 0;
+            for (long count : this.counts) {
+                seen += count;
+            }
+
+            long target = (long) Math.ceil(seen * Math.min(Math.max(percentile, 0), 100) / 100);
+            seen = 0;
+            for (int i = 0; i < this.counts.length; i++) {
+                seen += this.counts[i];
+                if (seen >= target && seen > 0) {
+                    return Math.min(upperBound(i), this.max);
+                }
+            }
+
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d calls, %d errors, mean %.0fns, p50 %dns, p99 %dns, max %dns", this.name,
+                this.calls, this.errors, this.getMean(), this.getPercentile(50), this.getPercentile(99), this.max);
+        }
+
+    }
+
+}
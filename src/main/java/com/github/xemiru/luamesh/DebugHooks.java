@@ -0,0 +1,149 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaClosure;
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.LuaThread;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.DebugLib;
+
+/**
+ * Debug library used internally to observe running
+ * scripts, hidden from the scripts themselves.
+ *
+ * <p>Events are passed on to whichever debug library the
+ * {@link Globals} had before this one was installed, so
+ * several of these can be stacked on top of LuaJ's own.
+ * LuaJ's debug library keeps call stacks up to date on
+ * every instruction, which costs far more than anything
+ * done here; if the Globals had no debug library to begin
+ * with, nothing needs those call stacks and they aren't
+ * kept. Count hooks set on threads are still run.</p>
+ */
+abstract class DebugHooks extends DebugLib {
+
+    private static final LuaValue COUNT = valueOf("count");
+
+    protected final Globals globals;
+    protected final DebugLib previous;
+    private boolean removed;
+
+    DebugHooks(Globals globals) {
+        this.globals = globals;
+        this.previous = globals.debuglib;
+    }
+
+    /**
+     * Makes this the debug library of its {@link Globals}.
+     */
+    void install() {
+        // loading a debug library also exposes it to scripts, which we don't want to do
+        LuaValue debug = globals.rawget("debug");
+        LuaValue loaded = globals.rawget("package").istable() ? globals.rawget("package").get("loaded") : NIL;
+        LuaValue loadedDebug = loaded.istable() ? loaded.rawget("debug") : NIL;
+
+        globals.load(this);
+        globals.rawset("debug", debug);
+        if (loaded.istable()) {
+            loaded.rawset("debug", loadedDebug);
+        }
+    }
+
+    /**
+     * Gives the {@link Globals} back the debug library they
+     * had before this one.
+     *
+     * <p>If another library was installed on top of this
+     * one, this one only passes events on from then on, and
+     * is skipped over once the other is uninstalled.</p>
+     */
+    void uninstall() {
+        this.removed = true;
+        if (globals.debuglib != this) {
+            return;
+        }
+
+        DebugLib lib = this.previous;
+        while (lib instanceof DebugHooks && ((DebugHooks) lib).removed) {
+            lib = ((DebugHooks) lib).previous;
+        }
+
+        globals.debuglib = lib;
+    }
+
+    /**
+     * Returns whether this library was uninstalled, and is
+     * only passing events on.
+     *
+     * @return if this library was uninstalled
+     */
+    boolean isRemoved() {
+        return this.removed;
+    }
+
+    @Override
+    public void onCall(LuaFunction f) {
+        if (this.previous != null) {
+            this.previous.onCall(f);
+        }
+    }
+
+    @Override
+    public void onCall(LuaClosure c, Varargs varargs, LuaValue[] stack) {
+        if (this.previous != null) {
+            this.previous.onCall(c, varargs, stack);
+        }
+    }
+
+    @Override
+    public void onReturn() {
+        if (this.previous != null) {
+            this.previous.onReturn();
+        }
+    }
+
+    @Override
+    public void onInstruction(int pc, Varargs v, int top) {
+        if (this.previous != null) {
+            this.previous.onInstruction(pc, v, top);
+            return;
+        }
+
+        // nobody can set line or call hooks without the debug library, so this is all that's left of it
+        LuaThread.State state = this.globals.running.state;
+        if (state.hookfunc != null && state.hookcount > 0 && !state.inhook
+            && ++state.bytecodes % state.hookcount == 0) {
+            state.inhook = true;
+            try {
+                state.hookfunc.call(COUNT, NIL);
+            } finally {
+                state.inhook = false;
+            }
+        }
+    }
+
+}
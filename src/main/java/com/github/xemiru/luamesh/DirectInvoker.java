@@ -0,0 +1,387 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calls a single bound Java method directly, without going
+ * through a {@link java.lang.invoke.MethodHandle} and an
+ * array of boxed parameters.
+ *
+ * <p>Implementations are generated for each bound method
+ * while {@link LuaMesh#directInvokers} is set, and defined
+ * next to the method's class so they can call it with a
+ * plain invokevirtual or invokestatic. {@link LuaMethodBind}
+ * only uses them once it made sure the receiver is an
+ * instance of that class, and falls back to its method
+ * handle otherwise.</p>
+ *
+ * <p>Parameters are converted the same way the method
+ * handle would convert the values of
+ * {@link LuaUtil#toJava(LuaValue, boolean)}: numbers widen
+ * to wider primitive types, and anything else raises a
+ * ClassCastException that
+ * {@link LuaMethodBind#translateException(Throwable)} can
+ * describe.</p>
+ */
+public abstract class DirectInvoker {
+
+    private static final String INTERNAL = Type.getInternalName(DirectInvoker.class);
+    private static final String INVOKE_DESC = "(Ljava/lang/Object;Lorg/luaj/vm2/Varargs;I)Ljava/lang/Object;";
+    private static final String ARG_DESC = "(I)Lorg/luaj/vm2/LuaValue;";
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    /**
+     * Generates an invoker for the given method.
+     *
+     * @param method the method to call
+     * @param variadic whether the method's last parameter
+     *        takes the trailing arguments
+     *
+     * @return the invoker, or null if the method can't be
+     *         called directly
+     */
+    static DirectInvoker create(Method method, boolean variadic) {
+        Class<?> owner = method.getDeclaringClass();
+        if (Modifier.isPrivate(method.getModifiers()) || owner.getClassLoader() == null) {
+            return null;
+        }
+
+        String name = Type.getInternalName(owner) + "$$LuaInvoker" + COUNT.incrementAndGet();
+        try {
+            byte[] code = generate(name, method, variadic);
+            Class<?> type = MeshTransformer.define(owner.getClassLoader(), name.replace('/', '.'), code);
+            return (DirectInvoker) type.getDeclaredConstructor().newInstance();
+        } catch (Throwable e) {
+            // the class loader may not see us, or may refuse to define classes for us
+            LuaMesh.debug(String.format("method %s in class %s is called through its method handle: %s",
+                method.getName(), owner.getName(), e));
+            return null;
+        }
+    }
+
+    private static byte[] generate(String name, Method method, boolean variadic) {
+        Class<?> owner = method.getDeclaringClass();
+        boolean statik = Modifier.isStatic(method.getModifiers());
+
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, name, null, INTERNAL, null);
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, INTERNAL, "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC, "invoke", INVOKE_DESC, null, null);
+        mv.visitCode();
+        if (!statik) {
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitTypeInsn(CHECKCAST, Type.getInternalName(owner));
+        }
+
+        Class<?>[] params = method.getParameterTypes();
+        for (int i = 0; i < params.length; i++) {
+            Class<?> param = params[i];
+            if (variadic && i == params.length - 1) {
+                // toRest(args, first + i, param, raw)
+                mv.visitVarInsn(ALOAD, 2);
+                mv.visitVarInsn(ILOAD, 3);
+                mv.visitLdcInsn(i);
+                mv.visitInsn(IADD);
+                mv.visitLdcInsn(Type.getType(param));
+                mv.visitInsn(VarargsList.isRaw(method) ? ICONST_1 : ICONST_0);
+                mv.visitMethodInsn(INVOKESTATIC, INTERNAL, "toRest",
+                    "(Lorg/luaj/vm2/Varargs;ILjava/lang/Class;Z)Ljava/lang/Object;", false);
+                mv.visitTypeInsn(CHECKCAST, Type.getInternalName(param));
+                break;
+            }
+
+            // args.arg(first + i)
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitVarInsn(ILOAD, 3);
+            mv.visitLdcInsn(i);
+            mv.visitInsn(IADD);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "org/luaj/vm2/Varargs", "arg", ARG_DESC, false);
+
+            if (param.isPrimitive()) {
+                String helper = "to" + Character.toUpperCase(param.getName().charAt(0)) + param.getName().substring(1);
+                mv.visitMethodInsn(INVOKESTATIC, INTERNAL, helper,
+                    "(Lorg/luaj/vm2/LuaValue;)" + Type.getDescriptor(param), false);
+            } else {
+                mv.visitLdcInsn(Type.getType(param));
+                mv.visitMethodInsn(INVOKESTATIC, INTERNAL, "toObject",
+                    "(Lorg/luaj/vm2/LuaValue;Ljava/lang/Class;)Ljava/lang/Object;", false);
+                mv.visitTypeInsn(CHECKCAST, Type.getInternalName(param));
+            }
+        }
+
+        boolean itf = owner.isInterface();
+        mv.visitMethodInsn(statik ? INVOKESTATIC : itf ? INVOKEINTERFACE : INVOKEVIRTUAL,
+            Type.getInternalName(owner), method.getName(), Type.getMethodDescriptor(method), itf);
+
+        Class<?> ret = method.getReturnType();
+        if (ret == void.class) {
+            mv.visitInsn(ACONST_NULL);
+        } else if (ret.isPrimitive()) {
+            Type boxed = Type.getType(LuaUtil.boxType(ret));
+            mv.visitMethodInsn(INVOKESTATIC, boxed.getInternalName(), "valueOf",
+                "(" + Type.getDescriptor(ret) + ")" + boxed.getDescriptor(), false);
+        }
+
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Calls the method.
+     *
+     * @param self the object to call the method on, ignored
+     *        for static methods
+     * @param args the arguments passed from Lua
+     * @param first the index of the argument passed as the
+     *        first parameter
+     *
+     * @return the boxed return value of the method, or null
+     *         if it returns nothing
+     */
+    public abstract Object invoke(Object self, Varargs args, int first);
+
+    // ---------------- parameter conversion ----------------
+
+    // used by generated code, hence public
+
+    public static Object toObject(LuaValue value, Class<?> type) {
+        Object obj = value.isnil() ? null
+            : LuaUtil.isView(type) ? LuaUtil.toJava(value, type) : LuaUtil.toJava(value, type == Float.class);
+        if (obj != null && !type.isInstance(obj)) {
+            throw mismatch(obj, type);
+        }
+
+        return obj;
+    }
+
+    public static int toInt(LuaValue value) {
+        if (value.isint()) {
+            return value.checkint();
+        }
+
+        Object obj = number(value, Integer.class);
+        if (obj instanceof Integer || obj instanceof Short || obj instanceof Byte) {
+            return ((Number) obj).intValue();
+        } else if (obj instanceof Character) {
+            return (Character) obj;
+        }
+
+        throw mismatch(obj, Integer.class);
+    }
+
+    public static long toLong(LuaValue value) {
+        if (value.isint()) {
+            return value.checkint();
+        }
+
+        Object obj = number(value, Long.class);
+        if (obj instanceof Long || obj instanceof Integer || obj instanceof Short || obj instanceof Byte) {
+            return ((Number) obj).longValue();
+        } else if (obj instanceof Character) {
+            return (Character) obj;
+        }
+
+        throw mismatch(obj, Long.class);
+    }
+
+    public static double toDouble(LuaValue value) {
+        Object obj = number(value, Double.class);
+        if (obj instanceof Number) {
+            return ((Number) obj).doubleValue();
+        } else if (obj instanceof Character) {
+            return (Character) obj;
+        }
+
+        throw mismatch(obj, Double.class);
+    }
+
+    public static float toFloat(LuaValue value) {
+        Object obj = number(value, Float.class);
+        if (obj instanceof Number && !(obj instanceof Double)) {
+            return ((Number) obj).floatValue();
+        } else if (obj instanceof Character) {
+            return (Character) obj;
+        }
+
+        throw mismatch(obj, Float.class);
+    }
+
+    public static short toShort(LuaValue value) {
+        Object obj = number(value, Short.class);
+        if (obj instanceof Short || obj instanceof Byte) {
+            return ((Number) obj).shortValue();
+        }
+
+        throw mismatch(obj, Short.class);
+    }
+
+    public static byte toByte(LuaValue value) {
+        Object obj = number(value, Byte.class);
+        if (obj instanceof Byte) {
+            return (Byte) obj;
+        }
+
+        throw mismatch(obj, Byte.class);
+    }
+
+    public static char toChar(LuaValue value) {
+        Object obj = number(value, Character.class);
+        if (obj instanceof Character) {
+            return (Character) obj;
+        }
+
+        throw mismatch(obj, Character.class);
+    }
+
+    public static boolean toBoolean(LuaValue value) {
+        Object obj = number(value, Boolean.class);
+        if (obj instanceof Boolean) {
+            return (Boolean) obj;
+        }
+
+        throw mismatch(obj, Boolean.class);
+    }
+
+    /**
+     * Converts the arguments from the given index onwards
+     * into the trailing parameter of a variadic method.
+     *
+     * @param args the arguments passed from Lua
+     * @param start the index of the first trailing argument
+     * @param type the type of the trailing parameter
+     * @param raw whether the trailing parameter holds
+     *        LuaValues
+     *
+     * @return the trailing parameter
+     *
+     * @see VarargsList#isVariadic(Method, boolean)
+     */
+    public static Object toRest(Varargs args, int start, Class<?> type, boolean raw) {
+        int size = Math.max(0, args.narg() - start + 1);
+        if (type == Varargs.class) {
+            return size == 0 ? LuaValue.NONE : args.subargs(start);
+        } else if (type == List.class) {
+            return size == 0 ? Collections.emptyList() : new VarargsList(args, start, size, raw);
+        }
+
+        // java varargs need an array of their own
+        Class<?> component = type.getComponentType();
+        if (component == int.class) {
+            int[] array = new int[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = toInt(args.arg(start + i));
+            }
+
+            return array;
+        } else if (component == double.class) {
+            double[] array = new double[size];
+            for (int i = 0; i < size; i++) {
+                array[i] = toDouble(args.arg(start + i));
+            }
+
+            return array;
+        }
+
+        Object array = Array.newInstance(component, size);
+        for (int i = 0; i < size; i++) {
+            LuaValue value = args.arg(start + i);
+            Object element;
+            if (raw) {
+                if (!component.isInstance(value)) {
+                    throw mismatch(value, component);
+                }
+
+                element = value;
+            } else if (component.isPrimitive()) {
+                element = toPrimitive(value, component);
+            } else {
+                element = toObject(value, component);
+            }
+
+            Array.set(array, i, element);
+        }
+
+        return array;
+    }
+
+    private static Object toPrimitive(LuaValue value, Class<?> type) {
+        if (type == long.class) return toLong(value);
+        if (type == float.class) return toFloat(value);
+        if (type == short.class) return toShort(value);
+        if (type == byte.class) return toByte(value);
+        if (type == char.class) return toChar(value);
+        return toBoolean(value);
+    }
+
+    private static Object number(LuaValue value, Class<?> type) {
+        if (value.isnil()) {
+            // what unboxing a null parameter would do
+            throw new NullPointerException("nil passed as a " + type.getSimpleName().toLowerCase() + " parameter");
+        }
+
+        return LuaUtil.toJava(value, false);
+    }
+
+    /**
+     * Returns the exception reporting the given object as
+     * passed where the given type was expected.
+     *
+     * @param obj the object passed
+     * @param type the type expected
+     *
+     * @return the ClassCastException to throw
+     */
+    static ClassCastException mismatch(Object obj, Class<?> type) {
+        // formatted like Class.cast's messages, which translateException expects
+        return new ClassCastException("Cannot cast " + obj.getClass().getName() + " to " + type.getName());
+    }
+
+}
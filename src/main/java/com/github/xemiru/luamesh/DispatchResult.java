@@ -0,0 +1,93 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import org.luaj.vm2.LuaError;
+
+/**
+ * Holds the outcome of a call to
+ * {@link LuaMesh#dispatchAll(java.util.Collection, String, Object...)}.
+ *
+ * <p>Results and errors are indexed by the iteration order
+ * of the dispatched collection. Objects that were skipped
+ * have neither a result nor an error.</p>
+ */
+public class DispatchResult {
+
+    private Object[] results;
+    private LuaError[] errors;
+    private int dispatched;
+
+    DispatchResult(Object[] results, LuaError[] errors, int dispatched) {
+        this.results = results;
+        this.errors = errors;
+        this.dispatched = dispatched;
+    }
+
+    /**
+     * Returns the values returned by each Lua function,
+     * converted to Java objects.
+     *
+     * @return the results of the dispatch
+     */
+    public Object[] getResults() {
+        return this.results;
+    }
+
+    /**
+     * Returns the errors raised by each Lua function.
+     *
+     * @return the errors of the dispatch
+     */
+    public LuaError[] getErrors() {
+        return this.errors;
+    }
+
+    /**
+     * Returns the count of objects whose Lua function was
+     * called.
+     *
+     * @return the count of dispatched objects
+     */
+    public int getDispatched() {
+        return this.dispatched;
+    }
+
+    /**
+     * Returns whether any of the dispatched functions
+     * raised an error.
+     *
+     * @return if the dispatch had errors
+     */
+    public boolean hasErrors() {
+        for (LuaError error : this.errors) {
+            if (error != null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+}
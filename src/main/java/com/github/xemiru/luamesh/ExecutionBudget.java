@@ -0,0 +1,307 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaClosure;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaThread;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.TwoArgFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the amount of Lua instructions a script may run.
+ *
+ * <p>Instructions are counted through LuaJ's debug count
+ * hook, which is only called once every
+ * {@link #getInterval()} instructions. The budget is also
+ * checked whenever the script calls into Java through a
+ * {@link LuaMethodBind}. A script running past its budget
+ * raises a {@link LuaError}; once exceeded, the error is
+ * raised again on every following instruction until the
+ * script returns, so scripts can't simply
+ * <code>pcall</code> their way past it.</p>
+ *
+ * <p>Only instructions run while inside
+ * {@link #call(Globals, LuaValue, Varargs)} are counted,
+ * including those of coroutines started within it. Outside
+ * of it, the {@link Globals} run without any debug hooks
+ * unless they had some to begin with.</p>
+ *
+ * <p>A budget keeps no state about the calls running under
+ * it besides its count, so the same budget may be shared
+ * by calls on several threads or nested within another
+ * budget's call.</p>
+ */
+public class ExecutionBudget {
+
+    /**
+     * The default amount of instructions between each
+     * check of the budget.
+     */
+    public static final int DEFAULT_INTERVAL = 1000;
+
+    private static final InheritableThreadLocal<ExecutionBudget> CURRENT = new InheritableThreadLocal<>();
+    private static volatile int active = 0;
+
+    /**
+     * Raises an error if the budget running on the current
+     * thread has been exceeded.
+     */
+    static void check() {
+        if (active > 0) {
+            ExecutionBudget budget = CURRENT.get();
+            if (budget != null && budget.exceeded) {
+                throw budget.error();
+            }
+        }
+    }
+
+    private static synchronized void activate(int delta) {
+        active += delta;
+    }
+
+    private long limit;
+    private int interval;
+    private AtomicLong used;
+    private volatile boolean exceeded;
+
+    /**
+     * Creates a new budget checked every
+     * {@link #DEFAULT_INTERVAL} instructions.
+     *
+     * @param limit the amount of instructions allowed
+     */
+    public ExecutionBudget(long limit) {
+        this(limit, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Creates a new budget.
+     *
+     * <p>Lower intervals catch scripts closer to their
+     * limit, at the cost of calling the hook more
+     * often.</p>
+     *
+     * @param limit the amount of instructions allowed
+     * @param interval the amount of instructions between
+     *        each check
+     */
+    public ExecutionBudget(long limit, int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+
+        this.limit = limit;
+        this.interval = interval;
+        this.used = new AtomicLong();
+    }
+
+    /**
+     * Returns the amount of instructions this budget allows.
+     *
+     * @return the instruction limit
+     */
+    public long getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * Returns the amount of instructions between each check
+     * of this budget.
+     *
+     * @return the sampling interval
+     */
+    public int getInterval() {
+        return this.interval;
+    }
+
+    /**
+     * Returns the amount of instructions counted against
+     * this budget so far, rounded down to the sampling
+     * interval.
+     *
+     * @return the instructions used
+     */
+    public long getUsed() {
+        return this.used.get();
+    }
+
+    /**
+     * Returns whether this budget has been exceeded.
+     *
+     * @return if the budget was exceeded
+     */
+    public boolean isExceeded() {
+        return this.exceeded;
+    }
+
+    /**
+     * Calls the given function under this budget.
+     *
+     * <p>Budgets are cumulative; calling multiple functions
+     * under the same budget counts all of them against the
+     * same limit.</p>
+     *
+     * @param globals the Globals the function belongs to
+     * @param function the function to call
+     * @param args the arguments to call the function with
+     *
+     * @return the function's return values
+     *
+     * @throws LuaError if the budget was exceeded, or the
+     *         function raised an error
+     */
+    public Varargs call(Globals globals, LuaValue function, Varargs args) {
+        if (this.exceeded) {
+            throw this.error();
+        }
+
+        Hooks hooks = Hooks.install(globals);
+        ExecutionBudget outer = hooks.budget;
+        ExecutionBudget previous = CURRENT.get();
+        LuaThread.State state = globals.running.state;
+        LuaValue hookfunc = state.hookfunc;
+        int hookcount = state.hookcount;
+
+        hooks.budget = this;
+        CURRENT.set(this);
+        activate(1);
+        try {
+            hooks.attach(state);
+            return function.invoke(args);
+        } finally {
+            activate(-1);
+            CURRENT.set(previous);
+            hooks.budget = outer;
+            state.hookfunc = hookfunc;
+            state.hookcount = hookcount;
+            hooks.uninstall();
+        }
+    }
+
+    private boolean consume(long count) {
+        if (this.used.addAndGet(count) > this.limit) {
+            this.exceeded = true;
+        }
+
+        return this.exceeded;
+    }
+
+    private LuaError error() {
+        return new LuaError("execution budget of " + this.limit + " instructions exceeded");
+    }
+
+    /**
+     * Debug hooks attaching the running budget's hook to
+     * every coroutine that starts while it runs.
+     *
+     * <p>Holds the state of the calls running on its
+     * {@link Globals}, which only ever run on one thread at
+     * a time.</p>
+     */
+    private static class Hooks extends DebugHooks {
+
+        static Hooks install(Globals globals) {
+            if (globals.debuglib instanceof Hooks) {
+                Hooks hooks = (Hooks) globals.debuglib;
+                hooks.depth++;
+                return hooks;
+            }
+
+            Hooks hooks = new Hooks(globals);
+            hooks.install();
+            return hooks;
+        }
+
+        private ExecutionBudget budget;
+        private List<LuaThread.State> attached;
+        private LuaValue hook;
+        private int depth;
+
+        private Hooks(Globals globals) {
+            super(globals);
+            this.attached = new ArrayList<>();
+            this.depth = 1;
+            this.hook = new TwoArgFunction() {
+                @Override
+                public LuaValue call(LuaValue event, LuaValue line) {
+                    ExecutionBudget budget = Hooks.this.budget;
+                    if (budget.consume(budget.interval)) {
+                        // from now on, raise on every instruction so the error can't be caught and looped past
+                        Hooks.this.globals.running.state.hookcount = 1;
+                        throw budget.error();
+                    }
+
+                    return NONE;
+                }
+            };
+        }
+
+        @Override
+        public void onCall(LuaClosure c, Varargs varargs, LuaValue[] stack) {
+            LuaThread.State state = this.globals.running.state;
+            if (this.budget != null && !state.inhook
+                && (state.hookfunc != this.hook || state.hookcount != this.count())) {
+                this.attach(state);
+                this.attached.add(state);
+            }
+
+            super.onCall(c, varargs, stack);
+        }
+
+        void attach(LuaThread.State state) {
+            state.hookfunc = this.hook;
+            state.hookcount = this.count();
+            state.hookline = false;
+            state.hookcall = false;
+            state.hookrtrn = false;
+        }
+
+        private int count() {
+            return this.budget.exceeded ? 1 : this.budget.interval;
+        }
+
+        @Override
+        void uninstall() {
+            if (--this.depth > 0) {
+                return;
+            }
+
+            for (LuaThread.State state : this.attached) {
+                state.hookfunc = null;
+                state.hookcount = 0;
+            }
+
+            super.uninstall();
+        }
+
+    }
+
+}
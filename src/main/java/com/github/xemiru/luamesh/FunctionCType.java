@@ -23,6 +23,7 @@
  */
 package com.github.xemiru.luamesh;
 
+import org.luaj.vm2.LuaString;
 import org.luaj.vm2.LuaValue;
 import org.luaj.vm2.lib.OneArgFunction;
 
@@ -58,21 +59,36 @@ import org.luaj.vm2.lib.OneArgFunction;
  */
 public class FunctionCType extends OneArgFunction {
 
+    // typenames of plain Lua values, so we don't re-encode them on every call
+    private static final LuaString[] TYPENAMES;
+
+    static {
+        TYPENAMES = new LuaString[LuaValue.TYPE_NAMES.length];
+        for (int i = 0; i < TYPENAMES.length; i++) {
+            TYPENAMES[i] = LuaValue.valueOf(LuaValue.TYPE_NAMES[i]);
+        }
+    }
+
     @Override
     public LuaValue call(LuaValue arg) {
-        LuaValue typename = null;
-        if (!arg.getmetatable().isnil()) {
-            typename = arg.getmetatable().get("__type");
+        LuaValue typename = LuaValue.NIL;
+        LuaValue mt = arg.getmetatable();
+        if (mt != null && !mt.isnil()) {
+            typename = mt.get(LuaMeta.TYPE);
         }
 
         if (typename.isnil()) {
             if (arg instanceof LuaObjectValue) {
-                typename = LuaValue.valueOf(((LuaObjectValue<?>) arg).getTypename());
+                LuaMeta meta = ((LuaObjectValue<?>) arg).getMeta();
+                typename = meta == null
+                        ? LuaValue.valueOf(((LuaObjectValue<?>) arg).getTypename())
+                        : meta.getLuaTypename();
             }
         }
 
         if (typename.isnil()) {
-            typename = LuaValue.valueOf(arg.typename());
+            int type = arg.type();
+            typename = type >= 0 && type < TYPENAMES.length ? TYPENAMES[type] : LuaValue.valueOf(arg.typename());
         }
 
         return typename;
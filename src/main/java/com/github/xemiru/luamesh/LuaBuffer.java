@@ -0,0 +1,434 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaInteger;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaUserdata;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A fixed-length array of numbers stored off-heap in a
+ * direct {@link ByteBuffer}, indexed from Lua like an
+ * array.
+ *
+ * <p>Unlike a {@link LuaTable}, a buffer stores its
+ * numbers unboxed; indexing it from Lua reads and writes
+ * the buffer directly. Java code sharing the buffer, such
+ * as through {@link #getBuffer()}, sees the same memory
+ * without any copying.</p>
+ *
+ * <p>From Lua, <code>buf[i]</code> reads or writes the
+ * i-th number, starting from 1, and <code>#buf</code> is
+ * the buffer's length. Reading outside of the buffer gives
+ * nil, and writing outside of it raises an error. Buffers
+ * also have the methods <code>buf:fill(value)</code>,
+ * <code>buf:sum()</code> and
+ * <code>buf:copy(source[, from[, to[, count]]])</code>,
+ * running as loops in Java.</p>
+ */
+public class LuaBuffer extends LuaUserdata {
+
+    /**
+     * The type of number stored by a {@link LuaBuffer}.
+     */
+    public enum Type {
+        INT(4), FLOAT(4), DOUBLE(8);
+
+        private int size;
+
+        Type(int size) {
+            this.size = size;
+        }
+
+        /**
+         * Returns the amount of bytes taken by a number of
+         * this type.
+         *
+         * @return the size of this type
+         */
+        public int getSize() {
+            return this.size;
+        }
+    }
+
+    private static final LuaTable METHODS = new LuaTable();
+
+    static {
+        METHODS.set("fill", new BufferMethod() {
+            @Override
+            Varargs call(LuaBuffer buffer, Varargs args) {
+                buffer.fill(args.checkdouble(2));
+                return buffer;
+            }
+        });
+
+        METHODS.set("sum", new BufferMethod() {
+            @Override
+            Varargs call(LuaBuffer buffer, Varargs args) {
+                return buffer.type == Type.INT ? LuaInteger.valueOf(buffer.sumInts()) : LuaValue.valueOf(buffer.sum());
+            }
+        });
+
+        METHODS.set("copy", new BufferMethod() {
+            @Override
+            Varargs call(LuaBuffer buffer, Varargs args) {
+                LuaValue arg = args.arg(2);
+                if (!(arg instanceof LuaBuffer)) {
+                    throw new LuaError("bad argument #1 to 'copy' (buffer expected, got " + arg.typename() + ")");
+                }
+
+                LuaBuffer source = (LuaBuffer) arg;
+                int from = args.optint(3, 1);
+                int to = args.optint(4, 1);
+                int count = args.optint(5, Math.min(source.length - from + 1, buffer.length - to + 1));
+                buffer.copy(source, from - 1, to - 1, count);
+                return buffer;
+            }
+        });
+    }
+
+    /**
+     * Creates a new buffer of zeroes.
+     *
+     * @param type the type of number to store
+     * @param length the amount of numbers to store
+     *
+     * @return the new buffer
+     */
+    public static LuaBuffer allocate(Type type, int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("length must not be negative");
+        }
+
+        return new LuaBuffer(ByteBuffer.allocateDirect(length * type.size).order(ByteOrder.nativeOrder()), type);
+    }
+
+    /**
+     * Creates a new buffer sharing the remaining bytes of
+     * the given buffer, read in its byte order.
+     *
+     * @param buffer the buffer to share
+     * @param type the type of number to store
+     *
+     * @return the new buffer
+     */
+    public static LuaBuffer wrap(ByteBuffer buffer, Type type) {
+        return new LuaBuffer(buffer.slice().order(buffer.order()), type);
+    }
+
+    private ByteBuffer buffer;
+    private Type type;
+    private int length;
+
+    // exactly one of these is set, matching the type
+    private IntBuffer ints;
+    private FloatBuffer floats;
+    private DoubleBuffer doubles;
+
+    private LuaBuffer(ByteBuffer buffer, Type type) {
+        super(buffer);
+        this.buffer = buffer;
+        this.type = type;
+        this.length = buffer.remaining() / type.size;
+
+        switch (type) {
+            case INT:
+                this.ints = buffer.asIntBuffer();
+                break;
+            case FLOAT:
+                this.floats = buffer.asFloatBuffer();
+                break;
+            default:
+                this.doubles = buffer.asDoubleBuffer();
+        }
+    }
+
+    // ---------------- java access ----------------
+
+    /**
+     * Returns the bytes of this buffer. Changes to them are
+     * seen by Lua.
+     *
+     * @return the bytes of this buffer
+     */
+    public ByteBuffer getBuffer() {
+        return this.buffer.duplicate().order(this.buffer.order());
+    }
+
+    /**
+     * Returns the type of number stored in this buffer.
+     *
+     * @return the type of this buffer
+     */
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * Returns the amount of numbers stored in this buffer.
+     *
+     * @return the length of this buffer
+     */
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * Returns the number at the given index, starting from
+     * 0.
+     *
+     * @param index the index of the number
+     *
+     * @return the number at the index
+     */
+    public double getNumber(int index) {
+        switch (this.type) {
+            case INT:
+                return this.ints.get(index);
+            case FLOAT:
+                return this.floats.get(index);
+            default:
+                return this.doubles.get(index);
+        }
+    }
+
+    /**
+     * Sets the number at the given index, starting from 0.
+     * Numbers stored in int buffers are truncated.
+     *
+     * @param index the index of the number
+     * @param value the new number
+     */
+    public void setNumber(int index, double value) {
+        switch (this.type) {
+            case INT:
+                this.ints.put(index, (int) value);
+                break;
+            case FLOAT:
+                this.floats.put(index, (float) value);
+                break;
+            default:
+                this.doubles.put(index, value);
+        }
+    }
+
+    /**
+     * Sets every number in this buffer to the given value.
+     *
+     * @param value the value to fill with
+     */
+    public void fill(double value) {
+        int length = this.length;
+        switch (this.type) {
+            case INT:
+                IntBuffer ints = this.ints;
+                int ivalue = (int) value;
+                for (int i = 0; i < length; i++) {
+                    ints.put(i, ivalue);
+                }
+                break;
+            case FLOAT:
+                FloatBuffer floats = this.floats;
+                float fvalue = (float) value;
+                for (int i = 0; i < length; i++) {
+                    floats.put(i, fvalue);
+                }
+                break;
+            default:
+                DoubleBuffer doubles = this.doubles;
+                for (int i = 0; i < length; i++) {
+                    doubles.put(i, value);
+                }
+        }
+    }
+
+    /**
+     * Returns the sum of the numbers in this buffer.
+     *
+     * @return the sum of this buffer
+     */
+    public double sum() {
+        if (this.type == Type.INT) {
+            return this.sumInts();
+        }
+
+        double sum = 0;
+        int length = this.length;
+        if (this.type == Type.FLOAT) {
+            FloatBuffer floats = this.floats;
+            for (int i = 0; i < length; i++) {
+                sum += floats.get(i);
+            }
+        } else {
+            DoubleBuffer doubles = this.doubles;
+            for (int i = 0; i < length; i++) {
+                sum += doubles.get(i);
+            }
+        }
+
+        return sum;
+    }
+
+    private long sumInts() {
+        long sum = 0;
+        int length = this.length;
+        IntBuffer ints = this.ints;
+        for (int i = 0; i < length; i++) {
+            sum += ints.get(i);
+        }
+
+        return sum;
+    }
+
+    /**
+     * Copies numbers from the given buffer into this one,
+     * converting them if the buffers' types differ. The
+     * buffers may be the same.
+     *
+     * @param source the buffer to copy from
+     * @param from the index to start copying from in the
+     *        source, starting from 0
+     * @param to the index to start copying to in this
+     *        buffer, starting from 0
+     * @param count the amount of numbers to copy
+     */
+    public void copy(LuaBuffer source, int from, int to, int count) {
+        if (count < 0 || from < 0 || to < 0 || from + count > source.length || to + count > this.length) {
+            throw new LuaError("buffer copy out of range");
+        }
+
+        if (source == this && to > from && to < from + count) {
+            // overlapping the numbers still to be copied; go backwards
+            for (int i = count - 1; i >= 0; i--) {
+                this.setNumber(to + i, this.getNumber(from + i));
+            }
+        } else if (source.type == this.type) {
+            // same layout; let the buffers move the bytes in bulk
+            int size = this.type.size;
+            ByteBuffer src = source.buffer.duplicate();
+            ((Buffer) src).limit((from + count) * size).position(from * size);
+            ByteBuffer dst = this.buffer.duplicate();
+            ((Buffer) dst).position(to * size);
+            dst.put(src);
+        } else {
+            for (int i = 0; i < count; i++) {
+                this.setNumber(to + i, source.getNumber(from + i));
+            }
+        }
+    }
+
+    // ---------------- lua access ----------------
+
+    @Override
+    public String typename() {
+        return "buffer";
+    }
+
+    @Override
+    public LuaValue len() {
+        return LuaValue.valueOf(this.length);
+    }
+
+    @Override
+    public LuaValue get(LuaValue key) {
+        if (key.isint()) {
+            return this.get(key.toint());
+        }
+
+        return METHODS.get(key);
+    }
+
+    @Override
+    public LuaValue get(int key) {
+        int index = key - 1;
+        if (index < 0 || index >= this.length) {
+            return LuaValue.NIL;
+        }
+
+        switch (this.type) {
+            case INT:
+                return LuaValue.valueOf(this.ints.get(index));
+            case FLOAT:
+                return LuaValue.valueOf(this.floats.get(index));
+            default:
+                return LuaValue.valueOf(this.doubles.get(index));
+        }
+    }
+
+    @Override
+    public void set(LuaValue key, LuaValue value) {
+        if (!key.isint()) {
+            throw new LuaError("attempt to index buffer with " + key.typename() + " " + key.tojstring());
+        }
+
+        this.set(key.toint(), value);
+    }
+
+    @Override
+    public void set(int key, LuaValue value) {
+        int index = key - 1;
+        if (index < 0 || index >= this.length) {
+            throw new LuaError("buffer index " + key + " out of range (length " + this.length + ")");
+        }
+
+        if (this.type == Type.INT && !value.isint()) {
+            throw new LuaError("bad value for int buffer (integer expected, got " + value.typename() + ")");
+        }
+
+        this.setNumber(index, value.checkdouble());
+    }
+
+    /**
+     * Method of a buffer called from Lua, checking that it
+     * was called on one.
+     */
+    private static abstract class BufferMethod extends VarArgFunction {
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            LuaValue self = args.arg1();
+            if (!(self instanceof LuaBuffer)) {
+                throw new LuaError("bad argument #1 (buffer expected, got " + self.typename() + ")");
+            }
+
+            return this.call((LuaBuffer) self, args);
+        }
+
+        abstract Varargs call(LuaBuffer buffer, Varargs args);
+
+    }
+
+}
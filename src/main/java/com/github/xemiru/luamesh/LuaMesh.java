@@ -24,14 +24,18 @@
 package com.github.xemiru.luamesh;
 
 import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaString;
 import org.luaj.vm2.LuaValue;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -82,18 +86,79 @@ public class LuaMesh {
      * typename in their `_type` metakey.
      */
     public static boolean useTypeMetakey = true;
+    /**
+     * Denotes whether or not unidirectional bindings
+     * registered through {@link #register(Class, Function)}
+     * have their metadata generated lazily, the first time
+     * an instance of the class is wrapped, instead of
+     * during {@link #init()}.
+     */
+    public static boolean lazyUnidirectional = false;
+    /**
+     * Denotes whether or not types keep call counts and
+     * latencies of their bindings, retrievable through
+     * {@link #getStats()}. Read when the metadata of a type
+     * is generated; types generated while this is unset
+     * don't pay anything for it.
+     */
+    public static boolean instrument = false;
+    /**
+     * Denotes whether or not bound methods are called
+     * through generated classes invoking them directly,
+     * rather than through method handles. Read when the
+     * metadata of a type is generated.
+     *
+     * <p>Calls only take the direct path after checking
+     * that the object they're made on is of the method's
+     * class; anything else, along with private methods and
+     * delegate methods, still goes through the method
+     * handle.</p>
+     */
+    public static boolean directInvokers = false;
+    /**
+     * The cache of {@link org.luaj.vm2.LuaString}s used
+     * for strings converted to Lua, or null to encode every
+     * string anew. Methods annotated with
+     * {@link LuaType#intern()} always use it; other
+     * conversions only do if {@link #internStrings} is set.
+     *
+     * <p>Runtimes of a {@link LuaPool} use a cache of their
+     * own with the same capacity instead, created along with
+     * the pool.</p>
+     */
+    public static LuaStringCache stringCache = new LuaStringCache(4096);
+    /**
+     * Denotes whether or not every string converted to Lua
+     * through {@link LuaUtil#toLua(Object)}, not only those
+     * returned by methods annotated with
+     * {@link LuaType#intern()}, is taken from
+     * {@link #stringCache}.
+     */
+    public static boolean internStrings = false;
+    /**
+     * Denotes whether or not LuaMesh emits Flight Recorder
+     * events, on JVMs that have one. The events are
+     * disabled by default and have to be enabled in a
+     * recording's settings by name: luamesh.LuaToJava,
+     * luamesh.JavaToLua, luamesh.WrapperCreated and
+     * luamesh.Init. Unsetting this before {@link #init()}
+     * skips generating them altogether.
+     */
+    public static boolean flightRecorder = true;
 
     public static Consumer<String> debug = null;
     private static Map<String, String> names;
     private static Map<Class<?>, LuaMeta> metas;
     private static List<String> classes;
     private static Map<Class<?>, Function<String, String>> uclasses;
+    private static Map<Class<?>, Function<String, String>> pending;
 
     static {
-        metas = new HashMap<>();
-        names = new HashMap<>();
+        metas = new ConcurrentHashMap<>();
+        names = new ConcurrentHashMap<>();
         classes = new ArrayList<>();
         uclasses = new HashMap<>();
+        pending = new ConcurrentHashMap<>();
     }
 
     /**
@@ -126,6 +191,30 @@ public class LuaMesh {
         return meta;
     }
 
+    /**
+     * Internal method. Registers the metadata for a lazily
+     * registered unidirectional class, if it has not yet
+     * been registered by another thread.
+     *
+     * @param clazz the class to register
+     *
+     * @return the LuaMeta of the class
+     */
+    private static LuaMeta registerPending(Class<?> clazz) {
+        synchronized (pending) {
+            Function<String, String> filter = pending.get(clazz);
+            if (filter == null) {
+                // beaten to it
+                return metas.get(clazz);
+            }
+
+            debug("lazily registering meta for class " + clazz.getName());
+            LuaMeta meta = registerMeta(clazz, filter);
+            pending.remove(clazz);
+            return meta;
+        }
+    }
+
     public static void debug(String message) {
         if(LuaMesh.debug != null) debug.accept(message);
     }
@@ -177,6 +266,11 @@ public class LuaMesh {
      * <p>If the filter is null, all methods will be
      * registered with their default names.</p>
      *
+     * <p>If {@link #lazyUnidirectional} is set, the metadata
+     * of the class is not generated by init(), but rather
+     * when an instance of it is first wrapped by a
+     * {@link LuaObjectValue}.</p>
+     *
      * @param clazz the class to register, by its qualified
      *        name (e.g. java.lang.Integer)
      * @param filter a filter determining which methods
@@ -184,7 +278,12 @@ public class LuaMesh {
      */
     public static void register(Class<?> clazz, Function<String, String> filter) {
         if (uclasses != null) {
-            uclasses.put(clazz, filter);
+            if (lazyUnidirectional) {
+                // null filters aren't allowed in the concurrent map
+                pending.put(clazz, filter == null ? Function.identity() : filter);
+            } else {
+                uclasses.put(clazz, filter);
+            }
         }
     }
 
@@ -199,9 +298,14 @@ public class LuaMesh {
      */
     public static void init() throws Throwable {
         if (classes != null) {
+            if (flightRecorder) {
+                MeshEvents.setup();
+            }
+
             try {
                 for (String str : classes) {
                     debug("applying transformations to class " + str);
+                    Object event = MeshEvents.init ? MeshEvents.begin(MeshEvents.INIT) : null;
 
                     String qname = str.replaceAll("\\.", "/");
                     ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
@@ -210,16 +314,21 @@ public class LuaMesh {
                     cr.accept(mt, 0);
 
                     MeshTransformer.transform(str, cw.toByteArray());
+                    MeshEvents.commit(MeshEvents.INIT, event, str, null, null, "transform");
                 }
 
                 for (String str : classes) {
                     debug("registering meta for class " + str);
-                    registerMeta(Class.forName(str, true, ClassLoader.getSystemClassLoader()), null);
+                    Object event = MeshEvents.init ? MeshEvents.begin(MeshEvents.INIT) : null;
+                    LuaMeta meta = registerMeta(Class.forName(str, true, ClassLoader.getSystemClassLoader()), null);
+                    MeshEvents.commit(MeshEvents.INIT, event, str, null, meta.getName(), "register");
                 }
 
                 for (Class<?> clazz : uclasses.keySet()) {
                     debug("registering meta for class " + clazz.getName());
-                    registerMeta(clazz, uclasses.get(clazz));
+                    Object event = MeshEvents.init ? MeshEvents.begin(MeshEvents.INIT) : null;
+                    LuaMeta meta = registerMeta(clazz, uclasses.get(clazz));
+                    MeshEvents.commit(MeshEvents.INIT, event, clazz.getName(), null, meta.getName(), "register");
                 }
             } finally {
                 classes = null;
@@ -275,28 +384,23 @@ public class LuaMesh {
     // because screw trying to cast that
     static Object lua(Object obj, String methodName, Object sup, Object _null, Object[] args) {
         // when java calls a lua function
-        LuaObjectValue<?> lobj = LuaObjectValue.of(obj);
+        // objects never passed to lua can't have lua implementations, so don't bother wrapping them
+        LuaObjectValue<?> lobj = LuaObjectValue.peek(obj);
         LuaMeta meta = getMeta(obj.getClass());
-        String luaName = meta.getLuaName(methodName);
-        LuaValue func = lobj.get(luaName);
-        if (meta.isMeta(methodName)) {
-            func = lobj.getmetatable().get(luaName);
-        }
-
-        if (!func.isfunction()) {
-            throw new LuaError("bad value: " + luaName + " is expected to be a function");
-        }
-
-        if (!(func instanceof LuaMethodBind)) {
-            // call lua func
-            return LuaUtil.toJava(func.call(lobj, LuaUtil.toLua(args)), false);
+        LuaString luaKey = getLuaKey(meta, obj.getClass(), methodName);
+        if (lobj != null) {
+            LuaValue func = resolve(lobj, meta, methodName, luaKey);
+            if (!LuaMethodBind.isBind(func)) {
+                // call lua func
+                return callLua(meta, methodName, func, lobj, LuaUtil.toLua(args));
+            }
         }
 
         // the function didn't exist in lua
         if (sup == null) {
             // our java method didnt exist either
             // scream
-            throw new LuaError("bad value: " + luaName + " is expected to be a function");
+            throw new LuaError("bad value: " + luaKey + " is expected to be a function");
         } else {
             if (sup instanceof Runnable) {
                 ((Runnable) sup).run();
@@ -307,6 +411,210 @@ public class LuaMesh {
         }
     }
 
+    /**
+     * Calls the Lua implementation of the named method on
+     * each of the given objects.
+     *
+     * <p>Objects without a Lua implementation of the method,
+     * including objects that were never passed to Lua and
+     * objects of types without a {@link LuaMeta}, are
+     * skipped; their Java methods are <strong>not</strong>
+     * called. Objects sharing the same implementation are
+     * called together. The Lua functions receive their
+     * parameters the same way as through the
+     * {@link #lua(Object, String, Runnable, Object...)}
+     * methods.</p>
+     *
+     * <p>Errors raised by one object do not stop the
+     * dispatch to the others.</p>
+     *
+     * @param objects the objects to call the method on
+     * @param methodName the name of the Java method
+     * @param args the parameters to give to the Lua
+     *        functions
+     *
+     * @return the results and errors of each call, indexed
+     *         by the iteration order of objects
+     *
+     * @throws LuaError if the method isn't bound on the
+     *         type of one of the objects; nothing is called
+     *         in that case
+     */
+    public static DispatchResult dispatchAll(Collection<?> objects, String methodName, Object... args) {
+        Object[] results = new Object[objects.size()];
+        LuaError[] errors = new LuaError[results.length];
+        LuaObjectValue<?>[] targets = new LuaObjectValue<?>[results.length];
+
+        // group by implementation, keeping the order of first appearance
+        Map<LuaValue, List<Integer>> groups = new LinkedHashMap<>();
+        Class<?> lastType = null;
+        LuaMeta meta = null;
+        LuaString luaKey = null;
+        int i = 0;
+        for (Object obj : objects) {
+            int index = i++;
+            if (obj == null) {
+                continue;
+            }
+
+            if (obj.getClass() != lastType) {
+                // resolve once per run of same-typed objects
+                lastType = obj.getClass();
+                meta = getMeta(lastType);
+                luaKey = meta == null ? null : getLuaKey(meta, lastType, methodName);
+            }
+
+            LuaObjectValue<?> lobj = meta == null ? null : LuaObjectValue.peek(obj);
+            if (lobj == null) {
+                continue;
+            }
+
+            LuaValue func;
+            try {
+                func = resolve(lobj, meta, methodName, luaKey);
+            } catch (LuaError e) {
+                errors[index] = e;
+                continue;
+            }
+
+            if (LuaMethodBind.isBind(func)) {
+                continue;
+            }
+
+            targets[index] = lobj;
+            groups.computeIfAbsent(func, k -> new ArrayList<>()).add(index);
+        }
+
+        LuaValue[] largs = new LuaValue[args.length];
+        for (int j = 0; j < args.length; j++) {
+            largs[j] = LuaUtil.toLua(args[j]);
+        }
+
+        int dispatched = 0;
+        for (Map.Entry<LuaValue, List<Integer>> group : groups.entrySet()) {
+            LuaValue func = group.getKey();
+            for (int index : group.getValue()) {
+                dispatched++;
+                try {
+                    // fresh table each call, in case one of them decides to modify it
+                    LuaObjectValue<?> target = targets[index];
+                    results[index] = callLua(target.getMeta(), methodName, func, target, LuaValue.listOf(largs));
+                } catch (LuaError e) {
+                    errors[index] = e;
+                }
+            }
+        }
+
+        return new DispatchResult(results, errors, dispatched);
+    }
+
+    private static Object callLua(LuaMeta meta, String methodName, LuaValue func, LuaValue self, LuaValue args) {
+        BindingStats stats = meta.getLuaStats(methodName);
+        Object event = MeshEvents.javaToLua ? MeshEvents.begin(MeshEvents.JAVA_TO_LUA) : null;
+        MeshProfiler.Track track = MeshProfiler.track();
+        int saved = track == null ? 0 : track.phase(MeshProfiler.LUA);
+        long start = stats == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            LuaValue returned = func.call(self, args);
+            if (track != null) {
+                track.phase(MeshProfiler.CONVERT);
+            }
+
+            Object converted = LuaUtil.toJava(returned, false);
+            failed = false;
+            return converted;
+        } finally {
+            if (stats != null) {
+                stats.record(System.nanoTime() - start, failed);
+            }
+
+            if (event != null) {
+                MeshEvents.commit(MeshEvents.JAVA_TO_LUA, event, meta.getTargetType().getName(), methodName,
+                    meta.getName() + "." + meta.getLuaName(methodName), failed);
+            }
+
+            if (track != null) {
+                track.exit(saved);
+            }
+        }
+    }
+
+    /**
+     * Returns snapshots of the call stats of every
+     * instrumented binding.
+     *
+     * <p>Only types whose metadata was generated while
+     * {@link #instrument} was set have stats. Calls from
+     * Java into Lua implementations only appear once one has
+     * been made.</p>
+     *
+     * @return the stats of every instrumented binding
+     */
+    public static List<BindingStats.Snapshot> getStats() {
+        List<BindingStats.Snapshot> snapshots = new ArrayList<>();
+        for (LuaMeta meta : metas.values()) {
+            for (BindingStats stats : meta.getStats()) {
+                snapshots.add(stats.snapshot());
+            }
+        }
+
+        return snapshots;
+    }
+
+    /**
+     * Clears the call stats of every instrumented binding.
+     */
+    public static void resetStats() {
+        for (LuaMeta meta : metas.values()) {
+            meta.getStats().forEach(BindingStats::reset);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the cache of
+     * {@link LuaObjectValue}s: its hit and miss counts,
+     * the amount of wrappers cleared by the garbage
+     * collector, and the count and estimated size of live
+     * wrappers of each type.
+     *
+     * <p>Taking a snapshot walks every live wrapper while
+     * holding the lock of the cache, so it shouldn't be
+     * done in a tight loop.</p>
+     *
+     * @return the stats of the wrapper cache
+     */
+    public static WrapperStats getWrapperStats() {
+        return LuaObjectValue.stats();
+    }
+
+    /**
+     * Clears the hit, miss and cleared counts of the cache
+     * of {@link LuaObjectValue}s. Live wrappers are
+     * unaffected.
+     */
+    public static void resetWrapperStats() {
+        LuaObjectValue.resetStats();
+    }
+
+    private static LuaString getLuaKey(LuaMeta meta, Class<?> type, String methodName) {
+        LuaString luaKey = meta == null ? null : meta.getLuaKey(methodName);
+        if (luaKey == null) {
+            throw new LuaError("no method " + methodName + " is bound on " + getLuaName(type));
+        }
+
+        return luaKey;
+    }
+
+    private static LuaValue resolve(LuaObjectValue<?> lobj, LuaMeta meta, String methodName, LuaString luaKey) {
+        LuaValue func = meta.isMeta(methodName) ? lobj.getmetatable().get(luaKey) : lobj.get(luaKey);
+        if (!func.isfunction()) {
+            throw new LuaError("bad value: " + luaKey + " is expected to be a function");
+        }
+
+        return func;
+    }
+
     /**
      * Returns the Lua name of the given class.
      *
@@ -315,6 +623,10 @@ public class LuaMesh {
      * @return the Lua name of clazz, or "nil" if passed null
      */
     public static String getLuaName(Class<?> clazz) {
+        if (clazz != null) {
+            getMeta(clazz); // make sure lazy metas have their name
+        }
+
         return getLuaName(clazz == null ? null : clazz.getName());
     }
 
@@ -354,16 +666,20 @@ public class LuaMesh {
      * Retrieves the {@link LuaMeta} of a class, or null if
      * not registered as Lua-coercible.
      *
+     * <p>Lazily registered classes have their LuaMeta
+     * generated by the first call to this method.</p>
+     *
      * @param clazz the class to retrieve LuaMeta for
      *
      * @return clazz's LuaMeta, or null if not registered
      */
     public static LuaMeta getMeta(Class<?> clazz) {
-        if (metas.containsKey(clazz)) {
-            return metas.get(clazz);
+        LuaMeta meta = metas.get(clazz);
+        if (meta == null && !pending.isEmpty() && pending.containsKey(clazz)) {
+            meta = registerPending(clazz);
         }
 
-        return null;
+        return meta;
     }
 
 }
@@ -26,19 +26,29 @@ package com.github.xemiru.luamesh;
 import static com.github.xemiru.luamesh.LuaMesh.debug;
 
 import com.github.xemiru.luamesh.LuaType.MetaEntry;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaString;
 import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
-import org.omg.CORBA.DynAnyPackage.Invalid;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.ThreeArgFunction;
+import org.luaj.vm2.lib.TwoArgFunction;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 /**
@@ -46,6 +56,11 @@ import java.util.function.Function;
  */
 public class LuaMeta {
 
+    /**
+     * The metakey holding the typename of a Lua object.
+     */
+    static final LuaString TYPE = LuaValue.valueOf("__type");
+
     /**
      * Performs name enforcement based on options set in
      * {@link LuaMesh} on a given name.
@@ -123,63 +138,414 @@ public class LuaMeta {
         return name;
     }
 
+    /**
+     * __index function of a child meta's member table,
+     * looking up members through the parent meta and
+     * caching the ones that are found.
+     */
+    private static class ParentIndex extends TwoArgFunction {
+
+        private LuaMeta parent;
+        private Map<LuaValue, LuaValue> cache;
+
+        ParentIndex(LuaMeta parent) {
+            this.parent = parent;
+            this.cache = new ConcurrentHashMap<>();
+        }
+
+        @Override
+        public LuaValue call(LuaValue table, LuaValue key) {
+            LuaValue value = this.cache.get(key);
+            if (value == null) {
+                value = this.parent.index.get(key);
+                if (value.isnil()) {
+                    return value;
+                }
+
+                this.cache.put(key, value);
+            }
+
+            return value;
+        }
+    }
+
+    /**
+     * Returns whether or not the given value is a metatable
+     * or member table of a type, which can't be modified.
+     *
+     * @param value the value to test
+     *
+     * @return if the value is a frozen table
+     */
+    static boolean isFrozen(LuaValue value) {
+        return value instanceof FrozenTable && ((FrozenTable) value).frozen;
+    }
+
+    /**
+     * Table that refuses any modification once frozen.
+     */
+    private static class FrozenTable extends LuaTable {
+
+        private boolean frozen;
+
+        FrozenTable() {
+            this.frozen = false;
+        }
+
+        void freeze() {
+            this.frozen = true;
+        }
+
+        private void checkFrozen() {
+            if (this.frozen) {
+                throw new LuaError("attempt to modify a read-only metatable");
+            }
+        }
+
+        @Override
+        public void rawset(int key, LuaValue value) {
+            checkFrozen();
+            super.rawset(key, value);
+        }
+
+        @Override
+        public void rawset(LuaValue key, LuaValue value) {
+            checkFrozen();
+            super.rawset(key, value);
+        }
+
+        @Override
+        public void hashset(LuaValue key, LuaValue value) {
+            checkFrozen();
+            super.hashset(key, value);
+        }
+
+        @Override
+        public void insert(int pos, LuaValue value) {
+            checkFrozen();
+            super.insert(pos, value);
+        }
+
+        @Override
+        public LuaValue remove(int pos) {
+            checkFrozen();
+            return super.remove(pos);
+        }
+
+        @Override
+        public void sort(LuaValue comparator) {
+            checkFrozen();
+            super.sort(comparator);
+        }
+
+        @Override
+        public LuaValue setmetatable(LuaValue metatable) {
+            checkFrozen();
+            return super.setmetatable(metatable);
+        }
+    }
+
+    /**
+     * A property of a Lua object, backed by a field or by a
+     * getter and setter of the Java object.
+     */
+    private static abstract class Property {
+
+        protected String name;
+
+        Property(String name) {
+            this.name = name;
+        }
+
+        abstract LuaValue get(Object obj);
+
+        abstract void set(Object obj, LuaValue value);
+
+    }
+
+    /**
+     * Property reading and writing a field.
+     */
+    private static class FieldProperty extends Property {
+
+        private Field field;
+
+        FieldProperty(String name, Field field) {
+            super(name);
+            this.field = field;
+        }
+
+        // if IllegalAccessExceptions happen, just rte it and cause a crash
+        // because we set it to accessible already and i'm not sure how
+        // it happens if it happens after that
+
+        @Override
+        LuaValue get(Object obj) {
+            try {
+                return LuaUtil.toLua(this.field.get(obj));
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        void set(Object obj, LuaValue value) {
+            Class<?> ft = this.field.getType();
+            try {
+                this.field.set(obj, value.isnil() ? LuaUtil.defaultValue(ft) : LuaUtil.toJava(value, LuaUtil.boxType(ft)));
+            } catch (IllegalArgumentException e) {
+                throw new LuaError("invalid value for Java field; expected " + LuaMesh.getLuaName(ft));
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+    }
+
+    /**
+     * Property calling a getter and a setter, either of
+     * which may be missing.
+     */
+    private static class MethodProperty extends Property {
+
+        private MethodHandle getter;
+        private MethodHandle setter;
+        private Class<?> type;
+        private boolean intern;
+
+        MethodProperty(String name, Method getter, Method setter) throws IllegalAccessException {
+            super(name);
+            if (getter != null) {
+                getter.setAccessible(true);
+                this.getter = MethodHandles.lookup().unreflect(getter);
+                this.intern = getter.getDeclaredAnnotation(LuaType.class).intern();
+            }
+
+            if (setter != null) {
+                setter.setAccessible(true);
+                this.setter = MethodHandles.lookup().unreflect(setter);
+                this.type = setter.getParameterTypes()[0];
+            }
+        }
+
+        @Override
+        LuaValue get(Object obj) {
+            if (this.getter == null) {
+                return LuaValue.NIL;
+            }
+
+            try {
+                Object value = this.getter.invoke(obj);
+                return this.intern ? LuaUtil.toLua(value, LuaObjectValue.strings()) : LuaUtil.toLua(value);
+            } catch (LuaError e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new LuaError(LuaMethodBind.translateException(e));
+            }
+        }
+
+        @Override
+        void set(Object obj, LuaValue value) {
+            if (this.setter == null) {
+                throw new LuaError("attempt to assign to read-only property " + this.name);
+            }
+
+            Object jvalue = value.isnil() ? LuaUtil.defaultValue(this.type) : LuaUtil.toJava(value, LuaUtil.boxType(this.type));
+            try {
+                this.setter.invoke(obj, jvalue);
+            } catch (LuaError e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new LuaError(LuaMethodBind.translateException(e));
+            }
+        }
+
+    }
+
+    /**
+     * __index function of types with properties, reading
+     * them from the Java object and looking up anything else
+     * in the type's members.
+     */
+    private static class PropertyIndex extends TwoArgFunction {
+
+        private LuaMeta meta;
+
+        PropertyIndex(LuaMeta meta) {
+            this.meta = meta;
+        }
+
+        @Override
+        public LuaValue call(LuaValue table, LuaValue key) {
+            Property property = this.meta.getProperty(key);
+            if (property != null && table instanceof LuaObjectValue) {
+                return property.get(((LuaObjectValue<?>) table).getObject());
+            }
+
+            return this.meta.index.get(key);
+        }
+    }
+
+    /**
+     * __newindex function of types with properties, writing
+     * them to the Java object and storing anything else in
+     * the Lua object itself.
+     */
+    private static class PropertyNewIndex extends ThreeArgFunction {
+
+        private LuaMeta meta;
+
+        PropertyNewIndex(LuaMeta meta) {
+            this.meta = meta;
+        }
+
+        @Override
+        public LuaValue call(LuaValue table, LuaValue key, LuaValue value) {
+            Property property = this.meta.getProperty(key);
+            if (property != null && table instanceof LuaObjectValue) {
+                property.set(((LuaObjectValue<?>) table).getObject(), value);
+            } else {
+                table.rawset(key, value);
+            }
+
+            return LuaValue.NONE;
+        }
+    }
+
+    /**
+     * __index function shared by all libraries of a type,
+     * binding methods to the library they're looked up
+     * from.
+     */
+    private static class LibraryIndex extends TwoArgFunction {
+
+        private LuaMeta meta;
+
+        LibraryIndex(LuaMeta meta) {
+            this.meta = meta;
+        }
+
+        @Override
+        public LuaValue call(LuaValue library, LuaValue key) {
+            Property property = this.meta.getProperty(key);
+            if (property != null && library instanceof LuaObjectValue) {
+                return property.get(((LuaObjectValue<?>) library).getObject());
+            }
+
+            LuaValue value = this.meta.index.get(key);
+            if (value instanceof LuaMethodBind && library instanceof LuaObjectValue) {
+                return ((LuaObjectValue<?>) library).bindLibraryMethod(key, (LuaMethodBind) value);
+            }
+
+            return value;
+        }
+    }
+
+    /**
+     * Metamethod shared by all libraries of a type, invoking
+     * its method on the library it was triggered by.
+     */
+    private static class LibraryMetamethod extends LuaMethodBind {
+
+        private LuaMeta meta;
+
+        LibraryMetamethod(LuaMeta meta, LuaMethodBind bind) {
+            super(bind);
+            this.meta = meta;
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            // whichever operand is one of our libraries
+            for (int i = 1; i <= args.narg(); i++) {
+                LuaValue arg = args.arg(i);
+                if (arg instanceof LuaObjectValue && arg.getmetatable() == this.meta.library) {
+                    return invoke(((LuaObjectValue<?>) arg).getObject(), args);
+                }
+            }
+
+            return invoke(this.instance, args);
+        }
+    }
+
     private Class<?> type;
-    private LuaTable metatable;
+    private LuaMeta parent;
+    private FrozenTable metatable;
+    private FrozenTable index;
+    private FrozenTable chain;
+    private volatile FrozenTable library;
     private String name;
+    private LuaString typename;
     private Map<String, String> names;
-    protected Map<String, Field> fields;
+    private Map<String, LuaString> keys;
+    private Map<String, String> members;
+    private Map<String, Field> fields;
+    private Map<String, Field> inheritedFields;
+    private Map<String, Property> properties;
+    private LuaTable slots;
+    private Property[] slotted;
     private Set<String> meta;
+    private List<BindingStats> stats;
+    private Map<String, BindingStats> luaStats;
 
     LuaMeta(Class<?> type, String name) {
         this.fields = new HashMap<>();
+        this.inheritedFields = new ConcurrentHashMap<>();
         this.names = new HashMap<>();
+        this.keys = new HashMap<>();
+        this.members = new HashMap<>();
         this.meta = new HashSet<>();
+        if (LuaMesh.instrument) {
+            this.stats = new ArrayList<>();
+            this.luaStats = new ConcurrentHashMap<>();
+        }
 
         this.type = type;
         this.name = name;
+        this.typename = LuaValue.valueOf(name);
 
         // generate metatable
-        this.metatable = new LuaTable();
+        this.metatable = new FrozenTable();
+        this.index = new FrozenTable();
+        this.chain = null;
 
-        // first, get the parents' stuff
-        List<Class<?>> parents = new ArrayList<>();
+        // find the closest registered parent; it already chains to its own parents
         Class<?> parent = type.getSuperclass();
         while (parent != null && parent != Object.class) {
-            parents.add(parent);
-            parent = parent.getSuperclass();
-        }
-
-        // reverse the order so we dont fuck up overrides
-        // clone parents' metatables
-        while (!parents.isEmpty()) {
-            Class<?> p = parents.get(parents.size() - 1);
-            if (p.getDeclaredAnnotation(LuaType.class) != null) {
-                LuaMeta meta = LuaMesh.getMeta(p);
-                if (meta == null) {
+            if (parent.getDeclaredAnnotation(LuaType.class) != null) {
+                this.parent = LuaMesh.getMeta(parent);
+                if (this.parent == null) {
                     throw new InvalidCoercionTargetException(String.format(
                             "Parent class %s of class %s has not been registered; could not inherit",
-                            p.getName(), type.getName()));
+                            parent.getName(), type.getName()));
                 }
 
-                LuaUtil.clone(this.metatable, meta.metatable, true);
-                this.fields.putAll(meta.fields);
-                this.names.putAll(meta.names);
-                this.meta.addAll(meta.meta); // wew, meta meta
+                break;
             }
 
-            parents.remove(p);
+            parent = parent.getSuperclass();
+        }
+
+        if (this.parent != null) {
+            // metamethods aren't looked up through __index, so they're the only thing we copy
+            LuaUtil.iterate(this.parent.metatable, (k, v) -> {
+                if (!LuaValue.INDEX.raweq(k)) {
+                    this.metatable.set(k, v);
+                }
+            });
+
+            // everything else gets chained to the parent's members
+            this.chain = new FrozenTable();
+            this.chain.set(LuaValue.INDEX, new ParentIndex(this.parent));
+            this.index.setmetatable(this.chain);
         }
 
         // apply the target class's stuff
         if (LuaMesh.useTypeMetakey) {
-            this.metatable.set("__type", LuaValue.valueOf(name));
+            this.metatable.set(TYPE, this.typename);
         }
 
-        LuaValue __index = this.metatable.get(LuaValue.INDEX);
-        if (__index.isnil()) {
-            __index = new LuaTable();
-            this.metatable.set(LuaValue.INDEX, __index);
-        }
+        this.metatable.set(LuaValue.INDEX, this.index);
     }
 
     /**
@@ -212,7 +578,8 @@ public class LuaMeta {
         }
 
         // register annotated methods and fields
-        LuaValue __index = this.metatable.get(LuaValue.INDEX);
+        LuaTable __index = this.index;
+        Map<String, Method[]> accessors = new LinkedHashMap<>();
 
         for (Method dmethod : delegate.getDeclaredMethods()) {
             LuaType typeAnnot = dmethod.getDeclaredAnnotation(LuaType.class);
@@ -220,7 +587,9 @@ public class LuaMeta {
             Method method;
 
             try {
-                method = type.getDeclaredMethod(dmethod.getName(), dmethod.getParameterTypes());
+                // getDeclaredMethod scans every method; don't bother if we already have it
+                method = delegate == type ? dmethod
+                        : type.getDeclaredMethod(dmethod.getName(), dmethod.getParameterTypes());
             } catch (NoSuchMethodException whoCares) {
                 method = dmethod;
                 delMethod = true;
@@ -233,46 +602,59 @@ public class LuaMeta {
             }
 
             if (typeAnnot != null) {
-                if (method.getReturnType().isArray()) {
-                    // arrays not allowed
+                if (method.getReturnType().isArray() && method.getReturnType() != byte[].class) {
+                    // arrays not allowed, save for byte arrays returned as Lua strings
                     throw new InvalidCoercionTargetException("Cannot bind method returning array type");
                 }
 
+                Class<?>[] ptypes = method.getParameterTypes();
+                if (typeAnnot.rest() && (ptypes.length == 0 || ptypes[ptypes.length - 1] != List.class)) {
+                    throw new InvalidCoercionTargetException(String.format(
+                        "method %s in class %s takes the rest of its arguments, but doesn't end with a List",
+                        method.getName(), type.getName()));
+                }
+
                 String mName = method.getName();
 
                 // apply the name override if its there
                 // perform name enforcement
                 String aName = typeAnnot.name().trim();
 
-                // check if we need to replace, in case of override
-                if (!aName.isEmpty() || !this.names.containsKey(mName)) {
+                // in case of override, keep the name we're replacing
+                String pName = getLuaName(mName);
+                if (!aName.isEmpty() || pName == null) {
                     aName = convertMemberName(method, aName);
+                } else {
+                    aName = pName;
                 }
 
                 // in case of override
-                if (this.names.containsValue(aName)) {
-                    if (typeAnnot.entry() != MetaEntry.INDEX) {
-                        this.metatable.set(typeAnnot.entry().getKey(), LuaValue.NIL);
-                        this.meta.remove(getKey(aName));
-                        this.names.remove(getKey(aName)); // last, otherwise getKey doesn't work
-                    } else {
-                        __index.set(aName, LuaValue.NIL);
-                    }
+                if (hasLuaName(aName)) {
+                    debug(String.format("method %s in class %s overrides Lua name %s", mName, type.getName(), aName));
                 }
 
                 try {
                     // register
                     method.setAccessible(true);
-                    LuaMethodBind lfunc = new LuaMethodBind(method);
+                    LuaMethodBind lfunc = new LuaMethodBind(method, typeAnnot.rest());
                     if(delMethod) lfunc.dinstance = dinstance;
+                    lfunc.blocking = typeAnnot.blocking();
+                    lfunc.intern = typeAnnot.intern();
 
                     if (typeAnnot.entry() != MetaEntry.INDEX) {
-                        this.metatable.set(typeAnnot.entry().getKey(), lfunc);
-                        this.names.put(mName, typeAnnot.entry().getKey().tojstring());
+                        this.metatable.set(typeAnnot.entry().getKey(), bind(lfunc, typeAnnot.entry().getKey()));
+                        putName(mName, typeAnnot.entry().getKey());
                         this.meta.add(mName);
                     } else {
-                        __index.set(aName, lfunc);
-                        this.names.put(mName, aName);
+                        LuaString key = putName(mName, aName);
+                        __index.set(key, bind(lfunc, key));
+                        if (typeAnnot.property()) {
+                            if (delMethod || !addAccessor(accessors, method)) {
+                                throw new InvalidCoercionTargetException(String.format(
+                                    "method %s in class %s is marked as a property, but isn't a getter or setter",
+                                    mName, type.getName()));
+                            }
+                        }
                     }
                 } catch (IllegalAccessException e) {
                     // let it cause a crash, this isn't good
@@ -286,7 +668,7 @@ public class LuaMeta {
             Field field;
 
             try {
-                field = type.getDeclaredField(dfield.getName());
+                field = delegate == type ? dfield : type.getDeclaredField(dfield.getName());
             } catch (NoSuchFieldException whoCares) {
                 throw new InvalidCoercionTargetException("Delegate classes cannot bind fields");
             }
@@ -304,34 +686,30 @@ public class LuaMeta {
                 String aName = typeAnnot.name().trim();
 
                 // check for override
-                if (!aName.isEmpty() || !this.names.containsKey(fName)) {
+                String pName = getLuaName(fName);
+                if (!aName.isEmpty() || pName == null) {
                     aName = convertMemberName(field, aName);
+                } else {
+                    aName = pName;
                 }
 
                 // in case of override
-                if (this.names.containsValue(aName)) {
-                    if (!this.fields.containsKey(aName)) {
-                        debug(String.format("field %s in class %s was not linked in favor of existing method of the same Lua name",
-                                aName, type.getName()));
-                        continue; // don't replace a method
-                    }
-
-                    if (typeAnnot.entry() != MetaEntry.INDEX) {
-                        this.metatable.set(typeAnnot.entry().getKey(), LuaValue.NIL);
-                        this.meta.remove(getKey(aName));
-                        this.names.remove(getKey(aName));
-                    } else {
-                        __index.set(aName, LuaValue.NIL);
-                    }
+                if (hasLuaName(aName) && getField(aName) == null) {
+                    debug(String.format("field %s in class %s was not linked in favor of existing method of the same Lua name",
+                            aName, type.getName()));
+                    continue; // don't replace a method
                 }
 
                 this.fields.put(aName, field);
-                this.names.put(fName, aName);
+                putName(fName, LuaValue.valueOf(aName));
                 this.meta.add(fName);
 
                 debug(String.format("field %s in class %s linked with Lua name %s", fName, type.getName(), aName));
             }
         }
+
+        buildProperties(accessors);
+        freeze();
     }
 
     /**
@@ -357,7 +735,7 @@ public class LuaMeta {
         this(type, convertClassName(type, null));
 
         // register methods
-        LuaValue __index = this.metatable.get(LuaValue.INDEX);
+        LuaTable __index = this.index;
         for (Method method : type.getDeclaredMethods()) {
             String mname = convertMemberName(method, null);
             String name = filter == null ? mname : filter.apply(mname);
@@ -367,13 +745,17 @@ public class LuaMeta {
 
             try {
                 method.setAccessible(true);
-                __index.set(name, new LuaMethodBind(method));
+                LuaString key = putName(method.getName(), name);
+                __index.set(key, bind(new LuaMethodBind(method), key));
             } catch (IllegalAccessException e) {
                 // let it cause a crash, this isn't good
                 throw new RuntimeException(e);
             }
         }
 
+        // inherit the properties of a registered parent
+        buildProperties(Collections.emptyMap());
+        freeze();
     }
 
     /**
@@ -386,6 +768,17 @@ public class LuaMeta {
         return this.name;
     }
 
+    /**
+     * Returns the name associated with the owning LuaType
+     * class, as the {@link LuaString} stored in its
+     * metatable.
+     *
+     * @return the Lua name of the associated class
+     */
+    public LuaString getLuaTypename() {
+        return this.typename;
+    }
+
     /**
      * Returns the object type targetted by this
      * {@link LuaMeta}.
@@ -396,12 +789,28 @@ public class LuaMeta {
         return this.type;
     }
 
+    /**
+     * Returns the {@link LuaMeta} of the closest registered
+     * parent class, whose members are inherited by this
+     * one, or null if there is none.
+     *
+     * @return the parent LuaMeta, or null
+     */
+    public LuaMeta getParent() {
+        return this.parent;
+    }
+
     /**
      * Returns the full Lua metatable for this
      * {@link LuaMeta} and its associated object type.
      *
-     * <p>This generally should not be modified by anything
-     * outside of the LuaMeta itself.</p>
+     * <p>The metatable is frozen once the LuaMeta is
+     * generated; any attempt to modify it, from Java or Lua,
+     * results in a {@link LuaError}.</p>
+     *
+     * <p>Its __index table only holds the members declared
+     * by the target class itself; inherited members are
+     * looked up through the parent's.</p>
      *
      * @return this LuaMeta's metatable
      */
@@ -409,6 +818,142 @@ public class LuaMeta {
         return this.metatable;
     }
 
+    /**
+     * Returns the metatable shared by all library values of
+     * this LuaMeta's type, generating it if needed.
+     *
+     * <p>Its __index is a function binding methods to the
+     * library they're looked up from, so libraries don't need
+     * their own copy of every function. Like the main
+     * metatable, it is frozen.</p>
+     *
+     * @return the library metatable
+     *
+     * @see LuaObjectValue#toLibrary()
+     */
+    LuaTable getLibraryMetatable() {
+        FrozenTable library = this.library;
+        if (library == null) {
+            synchronized (this) {
+                library = this.library;
+                if (library == null) {
+                    FrozenTable mt = new FrozenTable();
+                    LuaUtil.iterate(this.metatable, (k, v) -> {
+                        if (LuaValue.INDEX.raweq(k)) {
+                            mt.set(k, new LibraryIndex(this));
+                        } else if (v instanceof LuaMethodBind) {
+                            mt.set(k, new LibraryMetamethod(this, (LuaMethodBind) v));
+                        } else {
+                            mt.set(k, v);
+                        }
+                    });
+
+                    mt.freeze();
+                    this.library = library = mt;
+                }
+            }
+        }
+
+        return library;
+    }
+
+    /**
+     * Returns the __index table of this LuaMeta, holding
+     * only the members declared by its own class.
+     *
+     * @return this LuaMeta's own members
+     */
+    LuaTable getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Returns the field bound to the given Lua name,
+     * including inherited fields.
+     *
+     * @param luaName the Lua name of the field
+     *
+     * @return the field, or null if there is none
+     */
+    Field getField(String luaName) {
+        Field field = this.fields.get(luaName);
+        if (field == null && this.parent != null) {
+            field = this.inheritedFields.get(luaName);
+            if (field == null) {
+                field = this.parent.getField(luaName);
+                if (field != null) {
+                    this.inheritedFields.put(luaName, field);
+                }
+            }
+        }
+
+        return field;
+    }
+
+    /**
+     * Returns the property bound to the given key,
+     * including inherited properties.
+     *
+     * @param key the Lua key of the property
+     *
+     * @return the property, or null if there is none
+     */
+    private Property getProperty(LuaValue key) {
+        if (this.slots == null) {
+            return null;
+        }
+
+        LuaValue slot = this.slots.rawget(key);
+        return slot.isnil() ? null : this.slotted[slot.toint()];
+    }
+
+    /**
+     * Reads the field bound to the given key from the given
+     * object, as {@link LuaObjectValue#rawget(LuaValue)}
+     * does. Getter properties aren't read.
+     *
+     * @param obj the object to read from
+     * @param key the Lua key of the field
+     *
+     * @return the value of the field, or null if no field
+     *         is bound to the key
+     */
+    LuaValue getFieldValue(Object obj, LuaValue key) {
+        Property property = this.getProperty(key);
+        return property instanceof FieldProperty ? property.get(obj) : null;
+    }
+
+    /**
+     * Writes the field bound to the given key in the given
+     * object, as {@link LuaObjectValue#rawset(LuaValue,
+     * LuaValue)} does. Setter properties aren't called.
+     *
+     * @param obj the object to write to
+     * @param key the Lua key of the field
+     * @param value the value to write
+     *
+     * @return if a field is bound to the key
+     */
+    boolean setFieldValue(Object obj, LuaValue key, LuaValue value) {
+        Property property = this.getProperty(key);
+        if (property instanceof FieldProperty) {
+            property.set(obj, value);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the Lua names of all properties of this type,
+     * including fields and inherited properties.
+     *
+     * @return the Lua names of all properties
+     */
+    public Set<String> getPropertyNames() {
+        return this.properties == null ? Collections.emptySet() : Collections.unmodifiableSet(this.properties.keySet());
+    }
+
     /**
      * Returns whether or not the provided member's Java
      * name was registered within the Lua objects' main
@@ -419,7 +964,11 @@ public class LuaMeta {
      * @return if the member resides in the main metatable
      */
     public boolean isMeta(String memberName) {
-        return meta.contains(memberName);
+        if (this.parent == null || this.names.containsKey(memberName)) {
+            return this.meta.contains(memberName);
+        }
+
+        return this.parent.isMeta(memberName);
     }
 
     /**
@@ -431,19 +980,231 @@ public class LuaMeta {
      * @return the name of the Lua member
      */
     public String getLuaName(String memberName) {
-        return this.names.get(memberName);
+        String luaName = this.names.get(memberName);
+        if (luaName == null && this.parent != null) {
+            return this.parent.getLuaName(memberName);
+        }
+
+        return luaName;
+    }
+
+    /**
+     * Returns the Lua name of the provided member's Java
+     * name, as the {@link LuaString} key it is registered
+     * with.
+     *
+     * @param memberName the name of the Java member
+     *
+     * @return the key of the Lua member
+     */
+    public LuaString getLuaKey(String memberName) {
+        LuaString key = this.keys.get(memberName);
+        if (key == null && this.parent != null) {
+            return this.parent.getLuaKey(memberName);
+        }
+
+        return key;
+    }
+
+    /**
+     * Returns the Java name of the member registered under
+     * the provided Lua name.
+     *
+     * @param luaName the name of the Lua member
+     *
+     * @return the name of the Java member, or null if there
+     *         is none
+     */
+    public String getMemberName(String luaName) {
+        String memberName = this.members.get(luaName);
+        if (memberName == null && this.parent != null) {
+            return this.parent.getMemberName(luaName);
+        }
+
+        return memberName;
+    }
+
+    /**
+     * Returns the stats of calls from Java into the Lua
+     * implementation of the given method.
+     *
+     * @param memberName the name of the Java method
+     *
+     * @return the BindingStats of the method, or null if
+     *         this type isn't instrumented
+     */
+    BindingStats getLuaStats(String memberName) {
+        if (this.luaStats == null) {
+            return null;
+        }
+
+        return this.luaStats.computeIfAbsent(memberName,
+            key -> new BindingStats(this.name + "." + getLuaName(key), true));
+    }
+
+    /**
+     * Returns the stats of every binding of this type,
+     * including calls into Lua implementations made so far.
+     *
+     * @return the BindingStats of this type, empty if this
+     *         type isn't instrumented
+     */
+    List<BindingStats> getStats() {
+        if (this.stats == null) {
+            return Collections.emptyList();
+        }
+
+        List<BindingStats> all = new ArrayList<>(this.stats);
+        all.addAll(this.luaStats.values());
+        return all;
     }
 
     //
     // private utility
     //
 
-    private String getKey(String value) {
-        for (String key : this.names.keySet()) {
-            if (this.names.get(key).equals(value)) return key;
+    private LuaMethodBind bind(LuaMethodBind bind, LuaString key) {
+        bind.name = this.name + "." + key.tojstring();
+        if (this.stats != null) {
+            bind.stats = new BindingStats(bind.name, false);
+            this.stats.add(bind.stats);
+        }
+
+        return bind;
+    }
+
+    private LuaString putName(String memberName, String luaName) {
+        return putName(memberName, LuaValue.valueOf(luaName));
+    }
+
+    private LuaString putName(String memberName, LuaString luaKey) {
+        String luaName = luaKey.tojstring();
+        String old = this.names.put(memberName, luaName);
+        if (old != null && memberName.equals(this.members.get(old))) {
+            this.members.remove(old);
         }
 
-        return null;
+        this.keys.put(memberName, luaKey);
+        this.members.put(luaName, memberName);
+        return luaKey;
+    }
+
+    /**
+     * Records the given method if it's a getter or setter,
+     * by the Lua name of the property it belongs to.
+     *
+     * @return if the method was recorded
+     */
+    private boolean addAccessor(Map<String, Method[]> accessors, Method method) {
+        if (Modifier.isStatic(method.getModifiers())) {
+            return false;
+        }
+
+        String name = method.getName();
+        int params = method.getParameterCount();
+        Class<?> ret = method.getReturnType();
+
+        int prefix;
+        int slot;
+        if (params == 0 && ret != void.class && isAccessorName(name, "get")) {
+            prefix = 3;
+            slot = 0;
+        } else if (params == 0 && (ret == boolean.class || ret == Boolean.class) && isAccessorName(name, "is")) {
+            prefix = 2;
+            slot = 0;
+        } else if (params == 1 && isAccessorName(name, "set")) {
+            prefix = 3;
+            slot = 1;
+        } else {
+            return false;
+        }
+
+        String pName = Character.toLowerCase(name.charAt(prefix)) + name.substring(prefix + 1);
+        if (LuaMesh.enforcementOption == 2 || LuaMesh.enforcementOption == 3) {
+            pName = convertName(pName);
+        }
+
+        accessors.computeIfAbsent(pName, k -> new Method[2])[slot] = method;
+        return true;
+    }
+
+    private static boolean isAccessorName(String name, String prefix) {
+        return name.length() > prefix.length() && name.startsWith(prefix)
+            && Character.isUpperCase(name.charAt(prefix.length()));
+    }
+
+    /**
+     * Builds the properties of this type out of its fields,
+     * the given getters and setters and the properties of
+     * its parent, and installs the functions dispatching
+     * them if there are any.
+     */
+    private void buildProperties(Map<String, Method[]> accessors) {
+        Map<String, Property> props = new LinkedHashMap<>();
+        if (this.parent != null && this.parent.properties != null) {
+            props.putAll(this.parent.properties);
+        }
+
+        for (Map.Entry<String, Field> entry : this.fields.entrySet()) {
+            props.put(entry.getKey(), new FieldProperty(entry.getKey(), entry.getValue()));
+        }
+
+        for (Map.Entry<String, Method[]> entry : accessors.entrySet()) {
+            String pName = entry.getKey();
+            if (this.fields.containsKey(pName) || (hasLuaName(pName) && getField(pName) == null)) {
+                debug(String.format("property %s in class %s was not linked in favor of an existing member of the same Lua name",
+                    pName, this.type.getName()));
+                continue;
+            }
+
+            Method[] methods = entry.getValue();
+            try {
+                props.put(pName, new MethodProperty(pName, methods[0], methods[1]));
+            } catch (IllegalAccessException e) {
+                // let it cause a crash, this isn't good
+                throw new RuntimeException(e);
+            }
+
+            debug(String.format("property %s in class %s linked to %s", pName, this.type.getName(),
+                methods[0] == null ? "a setter" : methods[1] == null ? "a getter" : "a getter and setter"));
+        }
+
+        if (props.isEmpty()) {
+            // plain types keep __index as a table, costing lookups nothing extra
+            return;
+        }
+
+        // property keys map to slots, so lookups never need a Java string
+        this.properties = props;
+        this.slots = new LuaTable();
+        this.slotted = new Property[props.size()];
+        int i = 0;
+        for (Property property : props.values()) {
+            this.slots.rawset(LuaValue.valueOf(property.name), LuaValue.valueOf(i));
+            this.slotted[i++] = property;
+        }
+
+        // metamethods bound by the type itself take precedence
+        if (this.metatable.rawget(LuaValue.INDEX) == this.index) {
+            this.metatable.set(LuaValue.INDEX, new PropertyIndex(this));
+        }
+
+        LuaValue newindex = this.metatable.rawget(LuaValue.NEWINDEX);
+        if (newindex.isnil() || newindex instanceof PropertyNewIndex) {
+            this.metatable.set(LuaValue.NEWINDEX, new PropertyNewIndex(this));
+        }
+    }
+
+    private void freeze() {
+        this.metatable.freeze();
+        this.index.freeze();
+        if (this.chain != null) {
+            this.chain.freeze();
+        }
+    }
+
+    private boolean hasLuaName(String luaName) {
+        return getMemberName(luaName) != null;
     }
 
     /**
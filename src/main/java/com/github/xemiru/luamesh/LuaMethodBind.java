@@ -32,6 +32,10 @@ import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Utility class responsible for calling Java methods from
@@ -39,6 +43,11 @@ import java.lang.reflect.Modifier;
  */
 public class LuaMethodBind extends VarArgFunction implements Cloneable {
 
+    private static final Pattern[] CAST_MESSAGES = {
+        Pattern.compile("Cannot cast (\\S+) to (\\S+)"),
+        Pattern.compile("(?:class )?(\\S+) cannot be cast to (?:class )?(\\S+)")
+    };
+
     /**
      * Translates errors from Java into errors for Lua.
      *
@@ -47,10 +56,11 @@ public class LuaMethodBind extends VarArgFunction implements Cloneable {
      * @return the error message to pass
      */
     static String translateException(Throwable ex) {
-        if (ex instanceof ClassCastException) {
-            String[] msg = ex.getMessage().split(" ");
-            String given = msg[2];
-            String expected = msg[4];
+        Matcher cast = ex instanceof ClassCastException && ex.getMessage() != null
+            ? castMessage(ex.getMessage()) : null;
+        if (cast != null) {
+            String given = cast.group(1);
+            String expected = cast.group(2);
             String lex = LuaMesh.getLuaName(expected);
             if(lex.equals("<unknown type>")) {
                 lex = "<uncoercible Java type " + expected + ">";
@@ -64,21 +74,106 @@ public class LuaMethodBind extends VarArgFunction implements Cloneable {
         return ex.getMessage() == null ? msg : msg.concat(": ".concat(ex.getMessage()));
     }
 
+    private static Matcher castMessage(String message) {
+        // Class.cast's own message, then the JVM's, with or without the "class" prefixes of JDK 11+
+        for (Pattern pattern : CAST_MESSAGES) {
+            Matcher matcher = pattern.matcher(message);
+            if (matcher.lookingAt()) {
+                return matcher;
+            }
+        }
+
+        return null;
+    }
+
     private MethodHandle mh;
+    private DirectInvoker invoker;
+    private TupleReader tuple;
+    private Class<?> owner;
     private boolean[] numtypes;
+    private Class<?>[] views;
+    private boolean returnsView;
+    private Class<?> rest;
+    private boolean restRaw;
     private int paramCount;
     private boolean staticc;
+    private boolean async;
+    boolean blocking;
+    boolean intern;
+    BindingStats stats;
+    String name;
+    private String javaClass;
+    private String member;
     protected Object dinstance;
     protected Object instance;
 
-    private LuaMethodBind() {
+    /**
+     * Creates a copy of the given bind, invoking the same
+     * method.
+     *
+     * @param bind the bind to copy
+     */
+    LuaMethodBind(LuaMethodBind bind) {
+        this.mh = bind.mh;
+        this.invoker = bind.invoker;
+        this.tuple = bind.tuple;
+        this.owner = bind.owner;
+        this.numtypes = bind.numtypes;
+        this.views = bind.views;
+        this.returnsView = bind.returnsView;
+        this.rest = bind.rest;
+        this.restRaw = bind.restRaw;
+        this.paramCount = bind.paramCount;
+        this.staticc = bind.staticc;
+        this.async = bind.async;
+        this.blocking = bind.blocking;
+        this.intern = bind.intern;
+        this.stats = bind.stats;
+        this.name = bind.name;
+        this.javaClass = bind.javaClass;
+        this.member = bind.member;
+        this.dinstance = bind.dinstance;
+        this.instance = bind.instance;
     }
 
     public LuaMethodBind(Method method) throws IllegalAccessException {
+        this(method, false);
+    }
+
+    /**
+     * Creates a bind invoking the given method.
+     *
+     * @param method the method to invoke
+     * @param lists whether a trailing List parameter takes
+     *        the trailing arguments, as set by
+     *        {@link LuaType#rest()}
+     *
+     * @throws IllegalAccessException if the method can't be
+     *         accessed
+     */
+    LuaMethodBind(Method method, boolean lists) throws IllegalAccessException {
+        boolean variadic = VarargsList.isVariadic(method, lists);
         this.mh = MethodHandles.lookup().unreflect(method);
+        if (method.isVarArgs()) {
+            // the trailing array is built by gather, not collected by the handle
+            this.mh = this.mh.asFixedArity();
+        }
+
         this.staticc = Modifier.isStatic(method.getModifiers());
         Class<?>[] types = method.getParameterTypes();
         this.paramCount = types.length;
+        this.name = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        this.javaClass = method.getDeclaringClass().getName();
+        this.member = method.getName();
+        this.async = CompletionStage.class.isAssignableFrom(method.getReturnType());
+        this.owner = method.getDeclaringClass();
+        this.invoker = LuaMesh.directInvokers ? DirectInvoker.create(method, variadic) : null;
+        this.tuple = TupleReader.create(method.getReturnType());
+        this.returnsView = LuaUtil.isView(method.getReturnType());
+        if (variadic) {
+            this.rest = types[types.length - 1];
+            this.restRaw = VarargsList.isRaw(method);
+        }
         this.instance = null;
 
         this.numtypes = new boolean[this.paramCount];
@@ -88,11 +183,129 @@ public class LuaMethodBind extends VarArgFunction implements Cloneable {
                 continue;
             }
 
+            if (LuaUtil.isView(types[i])) {
+                if (this.views == null) {
+                    this.views = new Class<?>[this.paramCount];
+                }
+
+                this.views[i] = types[i];
+            }
+
             this.numtypes[i] = false;
         }
     }
 
     public Varargs invoke(Object obj, Varargs args) {
+        if (stats == null && !MeshEvents.luaToJava) {
+            return this.dispatch(obj, args);
+        }
+
+        Object event = MeshEvents.luaToJava ? MeshEvents.begin(MeshEvents.LUA_TO_JAVA) : null;
+        long start = stats == null ? 0 : System.nanoTime();
+        boolean failed = true;
+        try {
+            Varargs returned = this.dispatch(obj, args);
+            failed = false;
+            return returned;
+        } finally {
+            if (stats != null) {
+                stats.record(System.nanoTime() - start, failed);
+            }
+
+            MeshEvents.commit(MeshEvents.LUA_TO_JAVA, event, javaClass, member, name, failed);
+        }
+    }
+
+    private Varargs dispatch(Object obj, Varargs args) {
+        ExecutionBudget.check();
+
+        MeshProfiler.Track track = MeshProfiler.track();
+        if (track == null) {
+            return this.bridge(obj, args, null);
+        }
+
+        int saved = track.enter(this.name);
+        try {
+            return this.bridge(obj, args, track);
+        } finally {
+            track.exit(saved);
+        }
+    }
+
+    private Varargs bridge(Object obj, Varargs args, MeshProfiler.Track track) {
+        Object[] params = null;
+        Object self = null;
+        int first = 1;
+        if (invoker != null && dinstance == null) {
+            // the receiver is all the direct path needs resolved up front
+            if (!staticc) {
+                self = obj;
+                if (self == null) {
+                    LuaValue v = args.arg(1);
+                    self = v.isnil() ? null : LuaUtil.toJava(v, false);
+                    first = 2;
+                }
+
+                if (self == null) {
+                    throw new LuaError("attempt to index local 'self' (was not passed Java object)");
+                }
+            }
+
+            if (!staticc && !owner.isInstance(self)) {
+                // the guard failed; let the method handle produce the usual error
+                params = this.gather(obj, args);
+            }
+        } else {
+            params = this.gather(obj, args);
+        }
+
+        if (track != null) {
+            track.phase(MeshProfiler.JAVA);
+        }
+
+        if (blocking) {
+            LuaScheduler scheduler = LuaScheduler.current();
+            if (scheduler != null) {
+                Object[] p = params;
+                Object s = self;
+                int f = first;
+
+                // suspends the calling coroutine if it's one of the scheduler's tasks
+                return this.toLua(LuaScheduler.await(CompletableFuture.supplyAsync(() -> this.call(p, s, args, f),
+                    scheduler.getExecutor())));
+            }
+        }
+
+        Object result = this.call(params, self, args, first);
+        if (async && result instanceof CompletionStage) {
+            result = LuaScheduler.await((CompletionStage<?>) result);
+        }
+
+        if (track != null) {
+            track.phase(MeshProfiler.CONVERT);
+        }
+
+        return this.toLua(result);
+    }
+
+    private Varargs toLua(Object result) {
+        if (result instanceof Varargs) {
+            // already Lua values, returned as they are
+            return (Varargs) result;
+        } else if (this.tuple != null && result != null) {
+            return this.tuple.read(result);
+        }
+
+        LuaStringCache strings = this.intern || LuaMesh.internStrings ? LuaObjectValue.strings() : null;
+        if (this.returnsView) {
+            // declared as bytes or characters, so never wrapped as an object whatever it really is
+            return LuaUtil.fromView(result, strings);
+        }
+
+        return LuaUtil.toLua(result, strings);
+    }
+
+    private Object[] gather(Object obj, Varargs args) {
         // gather parameters
         Object[] params = new Object[staticc ? paramCount : paramCount + 1];
         int offset = 0;
@@ -115,15 +328,28 @@ public class LuaMethodBind extends VarArgFunction implements Cloneable {
                 }
             }
 
-            LuaValue v = args.arg((obj == null || staticc ? i + 1 : i) + offset);
+            int index = (obj == null || staticc ? i + 1 : i) + offset;
+            if (rest != null && i == params.length - 1) {
+                // the trailing arguments, however many there are
+                try {
+                    params[i] = DirectInvoker.toRest(args, index, rest, restRaw);
+                } catch (ClassCastException | NullPointerException e) {
+                    throw new LuaError(translateException(e));
+                }
+
+                continue;
+            }
+
+            LuaValue v = args.arg(index);
             if (v.isnil()) {
                 params[i] = null;
             } else {
                 // turn them into Java objects
-                if (staticc) {
-                    params[i] = LuaUtil.toJava(v, numtypes[i]);
+                int param = staticc ? i : i - 1;
+                if (param >= 0 && views != null && views[param] != null) {
+                    params[i] = LuaUtil.toJava(v, views[param]);
                 } else {
-                    params[i] = LuaUtil.toJava(v, i == 0 ? false : numtypes[i - 1]);
+                    params[i] = LuaUtil.toJava(v, param < 0 ? false : numtypes[param]);
                 }
             }
         }
@@ -133,17 +359,56 @@ public class LuaMethodBind extends VarArgFunction implements Cloneable {
             throw new LuaError("attempt to index local 'self' (was not passed Java object)");
         }
 
+        return params;
+    }
+
+    private Object call(Object[] params, Object self, Varargs args, int first) {
         try {
-            return LuaUtil.toLua(mh.invokeWithArguments(params));
+            return params == null ? invoker.invoke(self, args, first) : mh.invokeWithArguments(params);
         } catch (Throwable e) {
             if (e instanceof LuaError) {
                 throw (LuaError) e; // ignore it
             }
 
+            if (e instanceof ClassCastException && params != null) {
+                // the method handle's own message names the type it converted through, not the parameter's
+                ClassCastException mismatch = this.mismatch(params);
+                if (mismatch != null) {
+                    e = mismatch;
+                }
+            }
+
             throw new LuaError(translateException(e));
         }
     }
 
+    private ClassCastException mismatch(Object[] params) {
+        Class<?>[] types = mh.type().parameterArray();
+        for (int i = 0; i < params.length && i < types.length; i++) {
+            Object param = params[i];
+            Class<?> type = types[i];
+            if (param == null) {
+                continue;
+            }
+
+            boolean fits;
+            if (type == boolean.class || type == char.class) {
+                fits = LuaUtil.boxType(type).isInstance(param);
+            } else if (type.isPrimitive()) {
+                // the method handle widens and unboxes any number
+                fits = param instanceof Number;
+            } else {
+                fits = type.isInstance(param);
+            }
+
+            if (!fits) {
+                return DirectInvoker.mismatch(param, LuaUtil.boxType(type));
+            }
+        }
+
+        return null;
+    }
+
     @Override
     public Varargs invoke(Varargs args) {
         return this.invoke(instance, args);
@@ -151,15 +416,40 @@ public class LuaMethodBind extends VarArgFunction implements Cloneable {
 
     @Override
     public LuaMethodBind clone() {
-        LuaMethodBind lmb = new LuaMethodBind();
+        return new LuaMethodBind(this);
+    }
 
-        lmb.mh = this.mh;
-        lmb.numtypes = this.numtypes;
-        lmb.paramCount = this.paramCount;
-        lmb.staticc = this.staticc;
-        lmb.instance = this.instance;
+    /**
+     * Returns whether or not the given value calls a Java
+     * method, being a bind or a bind bound to a library.
+     *
+     * @param value the value to test
+     *
+     * @return if the value is a bound Java method
+     */
+    static boolean isBind(LuaValue value) {
+        return value instanceof LuaMethodBind || value instanceof Bound;
+    }
+
+    /**
+     * A method bound to the object of a library, calling
+     * the shared bind with that object rather than copying
+     * it.
+     */
+    static final class Bound extends VarArgFunction {
+
+        private final LuaMethodBind bind;
+        private final Object instance;
 
-        return lmb;
+        Bound(LuaMethodBind bind, Object instance) {
+            this.bind = bind;
+            this.instance = instance;
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            return this.bind.invoke(this.instance, args);
+        }
     }
 
 }
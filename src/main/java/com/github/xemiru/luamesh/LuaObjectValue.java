@@ -23,15 +23,16 @@
  */
 package com.github.xemiru.luamesh;
 
-import org.luaj.vm2.LuaError;
 import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
 
 import java.lang.ref.WeakReference;
-import java.lang.reflect.Field;
+import java.util.Comparator;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.WeakHashMap;
-import java.util.function.Function;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Generic container for Java objects to be passable as Lua
@@ -41,12 +42,104 @@ import java.util.function.Function;
  */
 public class LuaObjectValue<T> extends LuaTable {
 
+    // guarded by itself; wrappers can be requested by any thread running a script
     static final Map<Object, WeakReference<LuaObjectValue<?>>> STORED;
 
+    // estimated sizes, assuming compressed references; see WrapperStats
+    private static final long WRAPPER_BYTES = 48 + 32 + 48; // wrapper, its reference and its cache entry
+    private static final long SLOT_BYTES = 4 + 24; // hash table slot and its entry
+    private static final long BOUND_BYTES = 4 + 32 + 24; // map slot, map node and bound method
+
+    // also guarded by STORED
+    private static long created;
+    private static long clearedBase;
+
+    // counted outside of any lock, so scoped lookups don't contend
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
+    // the wrapper cache of the runtime the current thread runs, if any; see LuaPool
+    private static final InheritableThreadLocal<Scope> SCOPE = new InheritableThreadLocal<>();
+
     static {
         STORED = new WeakHashMap<>();
     }
 
+    /**
+     * A wrapper cache and string cache of its own, used
+     * instead of the global ones by the threads it's entered
+     * on.
+     *
+     * <p>Threads started while a scope is entered, such as
+     * the threads of Lua coroutines, inherit it. A scope is
+     * only used until it's closed, so threads outliving it
+     * go back to the global cache rather than sharing a
+     * cache with whoever uses it next.</p>
+     */
+    static final class Scope {
+
+        private final Map<Object, WeakReference<LuaObjectValue<?>>> wrappers;
+        private final LuaStringCache strings;
+        private volatile boolean open;
+
+        private Scope(Map<Object, WeakReference<LuaObjectValue<?>>> wrappers, LuaStringCache strings) {
+            this.wrappers = wrappers;
+            this.strings = strings;
+            this.open = true;
+        }
+
+        /**
+         * Closes this scope and leaves it on the current
+         * thread.
+         */
+        void close() {
+            this.open = false;
+            if (SCOPE.get() == this) {
+                SCOPE.remove();
+            }
+        }
+    }
+
+    /**
+     * Makes the current thread use the given caches until
+     * the returned scope is closed.
+     *
+     * @param wrappers the wrapper cache to use, guarded by
+     *        itself
+     * @param strings the string cache to use, or null to use
+     *        {@link LuaMesh#stringCache}
+     *
+     * @return the entered scope
+     */
+    static Scope enterScope(Map<Object, WeakReference<LuaObjectValue<?>>> wrappers, LuaStringCache strings) {
+        Scope scope = new Scope(wrappers, strings);
+        SCOPE.set(scope);
+        return scope;
+    }
+
+    /**
+     * Returns the string cache the current thread converts
+     * strings with: that of the runtime it runs, or
+     * {@link LuaMesh#stringCache}.
+     *
+     * @return the current string cache, or null if strings
+     *         aren't cached
+     */
+    static LuaStringCache strings() {
+        LuaStringCache global = LuaMesh.stringCache;
+        if (global == null) {
+            return null;
+        }
+
+        Scope scope = SCOPE.get();
+        return scope != null && scope.open && scope.strings != null ? scope.strings : global;
+    }
+
+    private static Map<Object, WeakReference<LuaObjectValue<?>>> scoped() {
+        Scope scope = SCOPE.get();
+        return scope != null && scope.open ? scope.wrappers : null;
+    }
+
     /**
      * Returns a {@link LuaObjectValue} holding the provided
      * object.
@@ -56,6 +149,12 @@ public class LuaObjectValue<T> extends LuaTable {
      * Otherwise, a new one is generated, registered and
      * returned.</p>
      *
+     * <p>This method is safe to call from multiple
+     * threads. Threads running a runtime of a
+     * {@link LuaPool} use a cache of that runtime's own, so
+     * wrappers and whatever scripts store in them aren't
+     * shared between runtimes.</p>
+     *
      * @param <T> the Java type held by the object value
      * @param object the Object for the value to hold
      *
@@ -68,15 +167,90 @@ public class LuaObjectValue<T> extends LuaTable {
             return null;
         }
 
-        if (LuaObjectValue.STORED.containsKey(object)) {
-            if (LuaObjectValue.STORED.get(object).get() != null) {
-                return (LuaObjectValue<T>) LuaObjectValue.STORED.get(object).get();
+        Map<Object, WeakReference<LuaObjectValue<?>>> scoped = scoped();
+        Map<Object, WeakReference<LuaObjectValue<?>>> cache = scoped == null ? LuaObjectValue.STORED : scoped;
+        synchronized (cache) {
+            WeakReference<LuaObjectValue<?>> ref = cache.get(object);
+            LuaObjectValue<?> value = ref == null ? null : ref.get();
+            if (value != null) {
+                LuaObjectValue.hits.increment();
+                return (LuaObjectValue<T>) value;
+            }
+
+            // replaces any cleared reference
+            LuaObjectValue.misses.increment();
+            LuaObjectValue<T> created = new LuaObjectValue<>(object);
+            cache.put(object, new WeakReference<>(created));
+            if (scoped == null) {
+                LuaObjectValue.created++;
             }
 
-            LuaObjectValue.STORED.remove(object);
+            return created;
         }
+    }
 
-        return new LuaObjectValue<>(object);
+    /**
+     * Returns the existing {@link LuaObjectValue} holding
+     * the provided object, without creating one if it
+     * doesn't exist.
+     *
+     * @param object the Object held by the value
+     *
+     * @return the LuaObjectValue holding the provided
+     *         object, or null if there is none
+     */
+    static LuaObjectValue<?> peek(Object object) {
+        Map<Object, WeakReference<LuaObjectValue<?>>> scoped = scoped();
+        Map<Object, WeakReference<LuaObjectValue<?>>> cache = scoped == null ? LuaObjectValue.STORED : scoped;
+        synchronized (cache) {
+            WeakReference<LuaObjectValue<?>> ref = cache.get(object);
+            return ref == null ? null : ref.get();
+        }
+    }
+
+    /**
+     * Returns the current state of the wrapper cache.
+     *
+     * @return a WrapperStats snapshot
+     */
+    static WrapperStats stats() {
+        synchronized (LuaObjectValue.STORED) {
+            // keyed by class, as different classes may share a simple name and thus a typename
+            Map<Class<?>, WrapperStats.Usage> types = new TreeMap<>(Comparator.comparing(Class::getName));
+            long live = 0;
+            for (WeakReference<LuaObjectValue<?>> ref : LuaObjectValue.STORED.values()) {
+                LuaObjectValue<?> value = ref.get();
+                if (value != null) {
+                    types.computeIfAbsent(value.ref.getClass(),
+                        type -> new WrapperStats.Usage(type, value.typename, value.meta))
+                        .add(value.estimateSize());
+                    live++;
+                }
+            }
+
+            // every wrapper created is either still live or has been collected
+            long cleared = LuaObjectValue.created - live - LuaObjectValue.clearedBase;
+            return new WrapperStats(LuaObjectValue.hits.sum(), LuaObjectValue.misses.sum(), cleared, types);
+        }
+    }
+
+    /**
+     * Clears the hit, miss and cleared counters of the
+     * wrapper cache.
+     */
+    static void resetStats() {
+        synchronized (LuaObjectValue.STORED) {
+            long live = 0;
+            for (WeakReference<LuaObjectValue<?>> ref : LuaObjectValue.STORED.values()) {
+                if (ref.get() != null) {
+                    live++;
+                }
+            }
+
+            LuaObjectValue.hits.reset();
+            LuaObjectValue.misses.reset();
+            LuaObjectValue.clearedBase = LuaObjectValue.created - live;
+        }
     }
 
     /**
@@ -103,21 +277,24 @@ public class LuaObjectValue<T> extends LuaTable {
 
     private String typename;
     private LuaMeta meta;
+    // filled by any thread looking methods up from this library
+    private volatile Map<LuaValue, LuaValue> bound;
     private T ref;
 
     private LuaObjectValue(T object) {
+        Object event = MeshEvents.wrappers ? MeshEvents.begin(MeshEvents.WRAPPER) : null;
         this.ref = object;
 
-        LuaObjectValue.STORED.put(object, new WeakReference<>(this));
         LuaMeta meta = LuaMesh.getMeta(object.getClass());
         if (meta != null) {
             this.meta = meta;
             this.typename = meta.getName();
             this.setmetatable(meta.getMetatable());
-            this.initializeFields();
         } else {
             this.typename = LuaMeta.convertClassName(object.getClass(), null);
         }
+
+        MeshEvents.commit(MeshEvents.WRAPPER, event, object.getClass().getName(), null, this.typename);
     }
 
     // ---------------- g/s object params ----------------
@@ -161,149 +338,89 @@ public class LuaObjectValue<T> extends LuaTable {
      * functions no longer require a self-reference to function and
      * can simply be called normally.
      *
-     * <p>The original metatable is removed and replaced with a new
-     * table that satisfies the library format. The old metatable
-     * is shallowly-cloned. __index is also shallowly cloned. All
-     * instances of a {@link LuaMethodBind} are copied and modified
-     * to support the library format. The original metatable can
-     * still be found in {@link #getMeta()}.</p>
+     * <p>The original metatable is replaced with one shared by all
+     * libraries of the same type. Functions are bound to this
+     * library the first time they are looked up from it, so
+     * creating a library does not copy any of them. The original
+     * metatable can still be found in {@link #getMeta()}.</p>
      *
      * @return a library version of this LuaObjectValue
      */
     public LuaObjectValue<T> toLibrary() {
-        LuaTable mt = new LuaTable();
-        LuaTable __index = new LuaTable();
-
-        Function<LuaValue, LuaValue> convert = v -> {
-            if(v instanceof LuaMethodBind) {
-                LuaMethodBind lmb = ((LuaMethodBind) v).clone();
-                lmb.instance = this.ref;
-                return lmb;
-            } else {
-                return v;
-            }
-        };
-
-        LuaUtil.iterate(this.meta.getMetatable(), (k, v) -> {
-            if(v.istable() && k.tojstring().equals("__index")) {
-                LuaUtil.iterate(v.checktable(), (kk, vv) -> {
-                    __index.set(kk, convert.apply(vv));
-                });
-            } else {
-                mt.set(k, convert.apply(v));
+        this.setmetatable(this.meta.getLibraryMetatable());
+        return this;
+    }
+
+    /**
+     * Returns the given method bound to the object held by
+     * this library, binding it if it hasn't been yet.
+     *
+     * @param key the key the method was looked up with
+     * @param bind the method
+     *
+     * @return the bound method
+     */
+    LuaValue bindLibraryMethod(LuaValue key, LuaMethodBind bind) {
+        Map<LuaValue, LuaValue> bound = this.bound;
+        if (bound == null) {
+            synchronized (this) {
+                bound = this.bound;
+                if (bound == null) {
+                    this.bound = bound = new ConcurrentHashMap<>();
+                }
             }
-        });
+        }
 
-        mt.set(LuaValue.INDEX, __index);
-        this.setmetatable(mt);
-        return this;
+        LuaValue lmb = bound.get(key);
+        if (lmb == null) {
+            // the bind itself is shared; only the object it's called on is stored
+            lmb = bound.computeIfAbsent(key, k -> new LuaMethodBind.Bound(bind, this.ref));
+        }
+
+        return lmb;
     }
 
     // ---------------- java/lua field sync ----------------
 
-    // if IllegalAccessExceptions happen, just rte it and cause a crash
-    // because we set it to accessible in LuaMeta and i'm not sure how
-    // it happens if it happens after that
-
     @Override
     public LuaValue rawget(LuaValue key) {
-        if(key.isstring() && this.meta.fields.containsKey(key.checkjstring())) {
-            try {
-                return LuaUtil.toLua(getField(ref, key.checkjstring()));
-            } catch(IllegalAccessException e) {
-                throw new RuntimeException(e);
-            }
-        } else {
-            return super.rawget(key);
-        }
+        // fields live in the Java object, even for rawget
+        LuaValue value = this.meta == null ? null : this.meta.getFieldValue(this.ref, key);
+        return value == null ? super.rawget(key) : value;
     }
 
     @Override
     public void rawset(LuaValue key, LuaValue value) {
-        if(key.isstring() && this.meta.fields.containsKey(key.checkjstring())) {
-            try {
-                Field f = field(key.checkjstring());
-                Object jvalue = LuaUtil.toJava(value, fromPrimitive(f.getType()));
-
-                setField(ref, key.checkjstring(), jvalue);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException(e);
-            }
-        } else {
+        if (this.meta == null || !this.meta.setFieldValue(this.ref, key, value)) {
             super.rawset(key, value);
         }
     }
 
-    private Field field(String aName) {
-        return this.meta.fields.get(aName);
-    }
-
-    private void initializeFields() {
-        try {
-            for (String luaName : this.meta.fields.keySet()) {
-                this.set(luaName, LuaUtil.toLua(getField(ref, luaName)));
-            }
-        } catch(IllegalAccessException e) {
-            throw new RuntimeException(e);
+    /**
+     * Returns the estimated size of this wrapper, its table
+     * storage and its cache entry, in bytes.
+     *
+     * @return the estimated size of this wrapper
+     */
+    long estimateSize() {
+        long size = WRAPPER_BYTES;
+        if (this.getArrayLength() > 0) {
+            size += align(16 + 4L * this.getArrayLength());
         }
-    }
 
-    private Class<?> fromPrimitive(Class<?> clazz) {
-        if(clazz.isPrimitive()) {
-            if(clazz == boolean.class) return Boolean.class;
-            if(clazz == byte.class) return Byte.class;
-            if(clazz == char.class) return Character.class;
-            if(clazz == short.class) return Short.class;
-            if(clazz == int.class) return Integer.class;
-            if(clazz == long.class) return Long.class;
-            if(clazz == double.class) return Double.class;
-            if(clazz == float.class) return Float.class;
+        if (this.getHashLength() > 0) {
+            size += align(16 + 4L * this.getHashLength()) + SLOT_BYTES * this.hashEntries;
         }
 
-        return clazz;
-    }
-
-    private Object getField(T obj, String aName) throws IllegalAccessException {
-        Field f = field(aName);
-        if(f == null) { return null; }
+        if (this.bound != null) {
+            size += 48 + BOUND_BYTES * this.bound.size();
+        }
 
-        return f.get(obj);
+        return size;
     }
 
-    private void setField(T obj, String aName, Object value) throws IllegalAccessException {
-        Field f = field(aName);
-        if(f == null) { return; }
-
-        Class<?> ft = f.getType();
-        if(value == null) {
-            if (ft.isPrimitive()) {
-                if (ft == boolean.class) {
-                    f.set(obj, false);
-                } else if(ft == byte.class) {
-                    f.set(obj, 0x00);
-                } else if(ft == char.class) {
-                    f.set(obj, '\u0000');
-                } else if(ft == short.class) {
-                    f.set(obj, (short) 0);
-                } else if (ft == int.class) {
-                    f.set(obj, 0);
-                } else if (ft == long.class) {
-                    f.set(obj, (long) 0);
-                } else if (ft == float.class) {
-                    f.set(obj, 0.0F);
-                } else if (ft == double.class) {
-                    f.set(obj, 0.0D);
-                }
-            } else {
-                f.set(obj, null);
-            }
-        } else {
-            try {
-                f.set(obj, value);
-            } catch(IllegalArgumentException e) {
-                throw new LuaError("invalid value for Java field; expected " + LuaMesh.getLuaName(ft));
-            }
-        }
+    private static long align(long size) {
+        return (size + 7) & ~7L;
     }
 
 }
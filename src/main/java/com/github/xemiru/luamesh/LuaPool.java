@@ -0,0 +1,367 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A fixed-size pool of pre-initialized Lua runtimes.
+ *
+ * <p>Every runtime is created and set up once, when the pool
+ * is created, so meshed libraries and other bindings don't
+ * need to be rebuilt for every script run. Runtimes are
+ * handed out to one thread at a time and have their global
+ * state reset when they are returned.</p>
+ *
+ * <pre>
+ * LuaPool pool = new LuaPool(4, JsePlatform::standardGlobals, g -&gt; {
+ *     g.set("ctype", new FunctionCType());
+ *     g.set("lib", LuaObjectValue.of(new MyLibrary()).toLibrary());
+ * });
+ *
+ * pool.apply(g -&gt; g.load(script).call());
+ * </pre>
+ *
+ * <p>Resetting restores every table reachable from the
+ * global table, such as <code>package.loaded</code>, along
+ * with their metatables, as they were right after setup.
+ * Anything else a script changed, such as the state of Java
+ * objects, is left alone.</p>
+ *
+ * <p>Each runtime has a cache of {@link LuaObjectValue}s of
+ * its own, used by the thread holding it and any coroutine
+ * started from it. A Java object passed to several runtimes
+ * gets a wrapper in each, so functions a script stores in one
+ * never show up in another, and wrappers made during a run
+ * are forgotten when the runtime is reset.</p>
+ *
+ * <p>Likewise, each runtime caches interned strings (see
+ * {@link LuaType#intern()}) in a {@link LuaStringCache} of
+ * its own, as large as {@link LuaMesh#stringCache}, so
+ * runtimes never contend over it. The cache survives
+ * resets.</p>
+ */
+public class LuaPool {
+
+    /**
+     * Shallow copy of a table's contents.
+     */
+    private static class Snapshot {
+
+        private LuaTable table;
+        private LuaValue metatable;
+        private LuaValue[] keys;
+        private LuaValue[] values;
+        private Set<LuaValue> keySet;
+
+        Snapshot(LuaTable table) {
+            this.table = table;
+            this.metatable = table.getmetatable();
+            this.keys = table.keys();
+            this.values = new LuaValue[this.keys.length];
+            this.keySet = new HashSet<>();
+            for (int i = 0; i < this.keys.length; i++) {
+                this.values[i] = table.rawget(this.keys[i]);
+                this.keySet.add(this.keys[i]);
+            }
+        }
+
+        void restore() {
+            // drop whatever was added
+            for (LuaValue key : this.table.keys()) {
+                if (!this.keySet.contains(key)) {
+                    this.table.rawset(key, LuaValue.NIL);
+                }
+            }
+
+            // and put back whatever was replaced
+            for (int i = 0; i < this.keys.length; i++) {
+                if (this.table.rawget(this.keys[i]) != this.values[i]) {
+                    this.table.rawset(this.keys[i], this.values[i]);
+                }
+            }
+
+            if (this.table.getmetatable() != this.metatable) {
+                this.table.setmetatable(this.metatable);
+            }
+        }
+    }
+
+    /**
+     * A pooled runtime and the state it's reset to.
+     */
+    private static class Runtime {
+
+        private Globals globals;
+        private Map<Object, WeakReference<LuaObjectValue<?>>> wrappers;
+        private LuaStringCache strings;
+        private List<Snapshot> snapshots;
+        private Set<LuaValue> kept;
+        private volatile Thread owner;
+        private LuaObjectValue.Scope scope;
+
+        Runtime(Supplier<Globals> factory, Consumer<Globals> setup) {
+            this.wrappers = new WeakHashMap<>();
+            LuaStringCache global = LuaMesh.stringCache;
+            this.strings = global == null ? null : new LuaStringCache(global.getCapacity());
+            this.owner = null;
+
+            // wrappers made during setup belong to this runtime too
+            LuaObjectValue.Scope scope = LuaObjectValue.enterScope(this.wrappers, this.strings);
+            try {
+                this.globals = factory.get();
+                if (setup != null) {
+                    setup.accept(this.globals);
+                }
+            } finally {
+                scope.close();
+            }
+
+            this.snapshots = new ArrayList<>();
+            this.kept = Collections.newSetFromMap(new IdentityHashMap<>());
+            snapshot(this.globals);
+        }
+
+        /**
+         * Snapshots every table reachable from the given one
+         * through keys, values and metatables.
+         */
+        private void snapshot(LuaTable root) {
+            Set<LuaValue> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+            Deque<LuaValue> pending = new ArrayDeque<>();
+            pending.push(root);
+            visited.add(root);
+
+            while (!pending.isEmpty()) {
+                LuaTable table = (LuaTable) pending.pop();
+                Snapshot snapshot = new Snapshot(table);
+                this.snapshots.add(snapshot);
+                if (table instanceof LuaObjectValue) {
+                    this.kept.add(table);
+                }
+
+                visit(snapshot.metatable, visited, pending);
+                for (int i = 0; i < snapshot.keys.length; i++) {
+                    visit(snapshot.keys[i], visited, pending);
+                    visit(snapshot.values[i], visited, pending);
+                }
+            }
+        }
+
+        private void visit(LuaValue value, Set<LuaValue> visited, Deque<LuaValue> pending) {
+            // types' own tables can't change, and wrappers of other runtimes aren't ours to reset
+            if (value == null || !value.istable() || LuaMeta.isFrozen(value) || !visited.add(value)) {
+                return;
+            }
+
+            if (value instanceof LuaObjectValue && !this.owns((LuaObjectValue<?>) value)) {
+                return;
+            }
+
+            pending.push(value);
+        }
+
+        private boolean owns(LuaObjectValue<?> value) {
+            synchronized (this.wrappers) {
+                WeakReference<LuaObjectValue<?>> ref = this.wrappers.get(value.getObject());
+                return ref != null && ref.get() == value;
+            }
+        }
+
+        void enter() {
+            this.owner = Thread.currentThread();
+            this.scope = LuaObjectValue.enterScope(this.wrappers, this.strings);
+        }
+
+        void reset() {
+            for (Snapshot snapshot : this.snapshots) {
+                snapshot.restore();
+            }
+
+            // forget wrappers made by scripts, along with whatever they stored in them
+            synchronized (this.wrappers) {
+                this.wrappers.values().removeIf(ref -> !this.kept.contains(ref.get()));
+            }
+        }
+
+        void exit() {
+            this.scope.close();
+            this.scope = null;
+            this.owner = null;
+        }
+    }
+
+    private BlockingQueue<Runtime> idle;
+    private Map<Globals, Runtime> runtimes;
+
+    /**
+     * Creates a new pool and initializes all of its
+     * runtimes.
+     *
+     * @param size the amount of runtimes to keep
+     * @param factory creates a new, empty runtime (e.g.
+     *        JsePlatform::standardGlobals)
+     * @param setup sets up a runtime created by the factory,
+     *        binding libraries and such; can be null
+     */
+    public LuaPool(int size, Supplier<Globals> factory, Consumer<Globals> setup) {
+        if (size < 1) {
+            throw new IllegalArgumentException("pool size must be positive");
+        }
+
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.runtimes = new IdentityHashMap<>();
+        for (int i = 0; i < size; i++) {
+            Runtime runtime = new Runtime(factory, setup);
+            this.runtimes.put(runtime.globals, runtime);
+            this.idle.add(runtime);
+        }
+    }
+
+    /**
+     * Returns the amount of runtimes held by this pool.
+     *
+     * @return the size of this pool
+     */
+    public int size() {
+        return this.runtimes.size();
+    }
+
+    /**
+     * Returns the amount of runtimes currently not in use.
+     *
+     * @return the amount of idle runtimes
+     */
+    public int available() {
+        return this.idle.size();
+    }
+
+    /**
+     * Takes a runtime from this pool, waiting for one to be
+     * released if they're all in use.
+     *
+     * <p>The runtime belongs to the calling thread until it
+     * is given back through {@link #release(Globals)}.</p>
+     *
+     * @return a runtime
+     *
+     * @throws InterruptedException if interrupted while
+     *         waiting
+     */
+    public Globals acquire() throws InterruptedException {
+        return take(this.idle.take());
+    }
+
+    /**
+     * Takes a runtime from this pool, waiting up to the
+     * given time for one to be released if they're all in
+     * use.
+     *
+     * @param timeout how long to wait
+     * @param unit the unit of the timeout
+     *
+     * @return a runtime, or null if none became available
+     *
+     * @throws InterruptedException if interrupted while
+     *         waiting
+     */
+    public Globals acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        Runtime runtime = this.idle.poll(timeout, unit);
+        return runtime == null ? null : take(runtime);
+    }
+
+    /**
+     * Gives a runtime back to this pool, resetting its
+     * state.
+     *
+     * <p>Runtimes must be released by the same thread that
+     * acquired them.</p>
+     *
+     * @param g the runtime to release
+     */
+    public void release(Globals g) {
+        Runtime runtime = this.runtimes.get(g);
+        if (runtime == null) {
+            throw new IllegalArgumentException("runtime does not belong to this pool");
+        }
+
+        if (runtime.owner != Thread.currentThread()) {
+            throw new IllegalStateException("runtime was not acquired by this thread");
+        }
+
+        try {
+            runtime.reset();
+        } finally {
+            runtime.exit();
+            this.idle.add(runtime);
+        }
+    }
+
+    /**
+     * Runs the given task with a runtime from this pool,
+     * releasing it afterwards.
+     *
+     * @param <T> the result type of the task
+     * @param task the task to run
+     *
+     * @return the result of the task
+     *
+     * @throws InterruptedException if interrupted while
+     *         waiting for a runtime
+     */
+    public <T> T apply(Function<Globals, T> task) throws InterruptedException {
+        Globals g = acquire();
+        try {
+            return task.apply(g);
+        } finally {
+            release(g);
+        }
+    }
+
+    private Globals take(Runtime runtime) {
+        runtime.enter();
+        return runtime.globals;
+    }
+
+}
@@ -0,0 +1,319 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaThread;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs Lua functions as coroutines that suspend while
+ * waiting on asynchronous Java methods.
+ *
+ * <p>Bound methods returning a {@link CompletionStage},
+ * or marked with {@link LuaType#blocking()}, suspend the
+ * calling coroutine instead of blocking when called from a
+ * task spawned by a scheduler. The coroutine is resumed by
+ * the scheduler once the result is available, so a single
+ * thread calling {@link #run()} takes turns running every
+ * task spawned on the scheduler. Outside of a scheduler,
+ * such methods simply block until their result is
+ * available.</p>
+ *
+ * <p>LuaJ runs every coroutine on a Java thread of its own,
+ * which stays parked while the coroutine is suspended. Each
+ * waiting task therefore still costs a platform thread and
+ * its stack; the scheduler saves the threads that would
+ * otherwise block on the Java calls themselves, not the
+ * threads of the coroutines.</p>
+ *
+ * <p>A scheduler must be driven by one thread at a time,
+ * and no other thread should use its {@link Globals} while
+ * it's running.</p>
+ */
+public class LuaScheduler {
+
+    // set on the threads of the scheduler's own coroutines, for as long as they run
+    private static final ThreadLocal<LuaScheduler> CURRENT = new ThreadLocal<>();
+    private static final LuaValue AWAIT = LuaValue.userdataOf(new Object());
+
+    /**
+     * Returns the scheduler running the current thread's
+     * task, if any.
+     *
+     * <p>Only the coroutine threads of tasks spawned on a
+     * scheduler have one; coroutines those tasks create
+     * themselves, and threads of executors, don't.</p>
+     *
+     * @return the current LuaScheduler, or null if none
+     */
+    static LuaScheduler current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Waits for the result of the given
+     * {@link CompletionStage}, suspending the running
+     * coroutine if it belongs to the current scheduler or
+     * blocking otherwise.
+     *
+     * @param stage the CompletionStage to wait on
+     *
+     * @return the result of the stage
+     */
+    static Object await(CompletionStage<?> stage) {
+        LuaScheduler scheduler = CURRENT.get();
+        if (scheduler != null && scheduler.canYield()) {
+            return scheduler.suspend(stage);
+        }
+
+        try {
+            return stage.toCompletableFuture().join();
+        } catch (CompletionException e) {
+            throw error(e.getCause());
+        }
+    }
+
+    /**
+     * Returns an {@link Executor} suitable for running
+     * blocking calls. Uses a virtual thread per task where
+     * the JDK supports it, or a cached pool of daemon
+     * threads otherwise.
+     *
+     * @return a new Executor for blocking calls
+     */
+    public static ExecutorService newBlockingExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "LuaScheduler-blocking");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static LuaError error(Throwable ex) {
+        if (ex instanceof CompletionException && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+
+        return ex instanceof LuaError ? (LuaError) ex : new LuaError(LuaMethodBind.translateException(ex));
+    }
+
+    private Globals globals;
+    private Executor executor;
+    private BlockingQueue<Runnable> ready;
+    private Map<LuaThread, CompletableFuture<Varargs>> tasks;
+    private AtomicInteger running;
+
+    /**
+     * Creates a new scheduler running blocking calls on
+     * {@link #newBlockingExecutor()}.
+     *
+     * @param globals the Globals to run tasks with
+     */
+    public LuaScheduler(Globals globals) {
+        this(globals, newBlockingExecutor());
+    }
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param globals the Globals to run tasks with
+     * @param executor the Executor to run methods marked
+     *        {@link LuaType#blocking()} on
+     */
+    public LuaScheduler(Globals globals, Executor executor) {
+        this.globals = globals;
+        this.executor = executor;
+        this.ready = new LinkedBlockingQueue<>();
+        this.tasks = new ConcurrentHashMap<>();
+        this.running = new AtomicInteger(0);
+    }
+
+    /**
+     * Returns the {@link Globals} this scheduler runs its
+     * tasks with.
+     *
+     * @return this scheduler's Globals
+     */
+    public Globals getGlobals() {
+        return this.globals;
+    }
+
+    /**
+     * Returns the {@link Executor} methods marked
+     * {@link LuaType#blocking()} are run on.
+     *
+     * @return this scheduler's blocking Executor
+     */
+    public Executor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * Returns the count of tasks spawned on this scheduler
+     * that have yet to finish.
+     *
+     * @return the count of unfinished tasks
+     */
+    public int getTaskCount() {
+        return this.running.get();
+    }
+
+    /**
+     * Spawns a new task calling the given function. The
+     * task starts on the next call to {@link #run()} or
+     * {@link #poll()}.
+     *
+     * @param function the function to call
+     * @param args the arguments to call the function with
+     *
+     * @return a CompletableFuture completed with the
+     *         function's return values, or exceptionally
+     *         with the {@link LuaError} it raised
+     */
+    public CompletableFuture<Varargs> spawn(LuaValue function, Varargs args) {
+        LuaThread thread = new LuaThread(this.globals, new Task(function));
+        CompletableFuture<Varargs> future = new CompletableFuture<>();
+        this.tasks.put(thread, future);
+        this.running.incrementAndGet();
+        this.ready.add(() -> this.resume(thread, args));
+        return future;
+    }
+
+    /**
+     * Runs tasks until all tasks spawned on this scheduler
+     * have finished, waiting on suspended tasks as needed.
+     *
+     * @throws InterruptedException if the thread was
+     *         interrupted while waiting
+     */
+    public void run() throws InterruptedException {
+        while (this.running.get() > 0) {
+            this.ready.take().run();
+        }
+    }
+
+    /**
+     * Runs all tasks ready to be resumed without waiting on
+     * any suspended tasks.
+     *
+     * @return the count of tasks resumed
+     */
+    public int poll() {
+        int count = 0;
+        for (int i = this.ready.size(); i > 0; i--) {
+            Runnable next = this.ready.poll();
+            if (next == null) {
+                break;
+            }
+
+            next.run();
+            count++;
+        }
+
+        return count;
+    }
+
+    private void resume(LuaThread thread, Varargs args) {
+        Varargs result = thread.resume(args);
+        if (thread.getStatus().equals("dead")) {
+            CompletableFuture<Varargs> future = this.tasks.remove(thread);
+            this.running.decrementAndGet();
+            if (result.arg1().toboolean()) {
+                future.complete(result.subargs(2));
+            } else {
+                future.completeExceptionally(new LuaError(result.arg(2)));
+            }
+
+            return;
+        }
+
+        if (result.arg(2) == AWAIT) {
+            // we're waiting on Java, come back when it's done
+            CompletionStage<?> stage = (CompletionStage<?>) result.arg(3).touserdata();
+            stage.whenComplete((value, ex) -> this.ready.add(() -> this.resume(thread, ex == null
+                ? LuaValue.varargsOf(LuaValue.TRUE, LuaValue.userdataOf(new Object[] {value}))
+                : LuaValue.varargsOf(LuaValue.FALSE, LuaValue.userdataOf(ex)))));
+        } else {
+            // plain coroutine.yield, let everyone else have a turn
+            this.ready.add(() -> this.resume(thread, LuaValue.NONE));
+        }
+    }
+
+    private boolean canYield() {
+        return this.tasks.containsKey(this.globals.running);
+    }
+
+    private Object suspend(CompletionStage<?> stage) {
+        Varargs result = this.globals.yield(LuaValue.varargsOf(AWAIT, LuaValue.userdataOf(stage)));
+        if (result.arg1().toboolean()) {
+            return ((Object[]) result.arg(2).touserdata())[0];
+        }
+
+        throw error((Throwable) result.arg(2).touserdata());
+    }
+
+    /**
+     * Body of a task's coroutine, marking the coroutine's
+     * thread as run by this scheduler while it runs.
+     */
+    private class Task extends VarArgFunction {
+
+        private LuaValue function;
+
+        Task(LuaValue function) {
+            this.function = function;
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            CURRENT.set(LuaScheduler.this);
+            try {
+                return this.function.invoke(args);
+            } finally {
+                CURRENT.remove();
+            }
+        }
+    }
+
+}
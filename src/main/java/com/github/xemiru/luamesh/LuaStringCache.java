@@ -0,0 +1,187 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import org.luaj.vm2.LuaString;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of {@link LuaString}s, sparing strings
+ * returned to Lua over and over from being encoded anew
+ * each time.
+ *
+ * <p>Entries are evicted with the clock algorithm: each
+ * entry is marked when hit, and the hand sweeping the
+ * entries for one to evict passes over and unmarks marked
+ * ones. Strings longer than {@link #MAX_LENGTH} characters
+ * are never cached.</p>
+ *
+ * <p>The cache used when converting values to Lua is set
+ * through {@link LuaMesh#stringCache}, while each runtime of
+ * a {@link LuaPool} has one of its own. A cache is
+ * synchronized, but is meant to be used by the threads of a
+ * single runtime; sharing one between runtimes running at
+ * once makes them contend on it.</p>
+ */
+public class LuaStringCache {
+
+    /**
+     * The length of the longest string stored in a cache.
+     */
+    public static final int MAX_LENGTH = 256;
+
+    private int capacity;
+    private Map<String, Integer> slots;
+    private String[] keys;
+    private LuaString[] values;
+    private boolean[] marked;
+    private int hand;
+    private int size;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a new cache holding at most the given amount
+     * of strings. Storage is allocated on first use.
+     *
+     * @param capacity the amount of strings to hold
+     */
+    public LuaStringCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the LuaString holding the given string,
+     * encoding and caching it if it isn't cached yet.
+     *
+     * @param str the string to convert
+     *
+     * @return the LuaString of the string
+     */
+    public LuaString valueOf(String str) {
+        if (str.length() > MAX_LENGTH) {
+            return LuaString.valueOf(str);
+        }
+
+        synchronized (this) {
+            if (this.slots != null) {
+                Integer slot = this.slots.get(str);
+                if (slot != null) {
+                    this.hits++;
+                    this.marked[slot] = true;
+                    return this.values[slot];
+                }
+            } else {
+                this.slots = new HashMap<>();
+                this.keys = new String[this.capacity];
+                this.values = new LuaString[this.capacity];
+                this.marked = new boolean[this.capacity];
+            }
+
+            this.misses++;
+            LuaString value = LuaString.valueOf(str);
+
+            int slot;
+            if (this.size < this.capacity) {
+                slot = this.size++;
+            } else {
+                while (this.marked[this.hand]) {
+                    this.marked[this.hand] = false;
+                    this.hand = (this.hand + 1) % this.capacity;
+                }
+
+                slot = this.hand;
+                this.hand = (this.hand + 1) % this.capacity;
+                this.slots.remove(this.keys[slot]);
+            }
+
+            this.keys[slot] = str;
+            this.values[slot] = value;
+            this.slots.put(str, slot);
+            return value;
+        }
+    }
+
+    /**
+     * Returns the maximum amount of strings held by this
+     * cache.
+     *
+     * @return the capacity of this cache
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Returns the amount of strings currently held by this
+     * cache.
+     *
+     * @return the size of this cache
+     */
+    public synchronized int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Returns how many lookups found their string cached.
+     *
+     * @return the hit count of this cache
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Returns how many lookups had to encode their string.
+     * Strings too long to be cached aren't counted.
+     *
+     * @return the miss count of this cache
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Removes all strings from this cache and resets its
+     * counts.
+     */
+    public synchronized void clear() {
+        this.slots = null;
+        this.keys = null;
+        this.values = null;
+        this.marked = null;
+        this.hand = 0;
+        this.size = 0;
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+}
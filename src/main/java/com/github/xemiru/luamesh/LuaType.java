@@ -94,6 +94,98 @@ public @interface LuaType {
      */
     boolean abstractt() default false;
 
+    /**
+     * Exposes this getter or setter as a property of the Lua
+     * object as well as a method. Applies to methods named
+     * <code>getX</code> or <code>isX</code> taking no
+     * parameters, or <code>setX</code> taking one.
+     *
+     * <p><code>obj.x</code> then calls the getter, and
+     * assigning to it calls the setter; a property with no
+     * marked setter is read-only. Unlike fields, properties
+     * are only reached through <code>__index</code> and
+     * <code>__newindex</code>, so <code>rawget</code> and
+     * <code>rawset</code> don't see them.</p>
+     *
+     * @return if the method is a property accessor
+     */
+    boolean property() default false;
+
+    /**
+     * Marks this method as blocking. Applies to methods
+     * only.
+     *
+     * <p>When called from a task run by a
+     * {@link LuaScheduler}, the method is run on the
+     * scheduler's executor and the calling coroutine is
+     * suspended until it returns. Otherwise, the method is
+     * called as normal.</p>
+     *
+     * <p>Methods returning a
+     * {@link java.util.concurrent.CompletionStage} are
+     * always waited on this way, and need not be marked.</p>
+     *
+     * @return if the method blocks
+     */
+    boolean blocking() default false;
+
+    /**
+     * Marks the strings returned by this method to be taken
+     * from {@link LuaMesh#stringCache}, rather than being
+     * encoded anew on every call. Applies to methods only.
+     *
+     * <p>Meant for methods returning the same few strings
+     * over and over, such as names or identifiers.</p>
+     *
+     * @return if the method's returned strings are interned
+     */
+    boolean intern() default false;
+
+    /**
+     * Marks this method as taking the remaining arguments of
+     * its calls through its last parameter, a
+     * {@link java.util.List}. Applies to methods only.
+     *
+     * <p>Without it, a List parameter takes a single
+     * argument, like any other parameter. Parameters of type
+     * {@link org.luaj.vm2.Varargs} and Java varargs always
+     * take the remaining arguments, and need not be
+     * marked.</p>
+     *
+     * @return if the method's last List parameter takes the
+     *         remaining arguments
+     */
+    boolean rest() default false;
+
+    /**
+     * Marks this class as a tuple type. Applies to classes
+     * only, which need not be registered.
+     *
+     * <p>Bound methods returning a tuple type return the
+     * values of the fields named by {@link #fields()} to Lua
+     * as multiple values rather than as an object. Bound
+     * methods may also return a
+     * {@link org.luaj.vm2.Varargs} directly.</p>
+     *
+     * @return if the class is a tuple type
+     */
+    boolean tuple() default false;
+
+    /**
+     * Names the fields of a tuple type returned to Lua, in
+     * the order they're returned. Applies to tuple classes
+     * only.
+     *
+     * <p>If empty, every non-static field is returned in the
+     * order reflection reports them. The JDK doesn't
+     * guarantee that order; HotSpot happens to use the
+     * order of declaration, but tuples relying on their
+     * order across JVMs should name their fields.</p>
+     *
+     * @return the names of the tuple's fields, in order
+     */
+    String[] fields() default {};
+
     /**
      * Sets where the member is placed in the object's
      * metatable entry. This is ignored when the target
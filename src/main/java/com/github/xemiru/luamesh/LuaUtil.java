@@ -25,10 +25,13 @@ package com.github.xemiru.luamesh;
 
 import static org.luaj.vm2.LuaValue.*;
 
+import org.luaj.vm2.LuaString;
 import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
 import org.luaj.vm2.Varargs;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.function.BiConsumer;
 
 /**
@@ -140,7 +143,29 @@ public class LuaUtil {
         }
     }
 
+    /**
+     * Turns a Lua object into a Java object of the given
+     * type.
+     *
+     * <p>Lua strings passed as a {@link LuaString},
+     * <code>byte[]</code>, {@link ByteBuffer} or
+     * {@link CharSequence} are given as a view of the
+     * string's bytes rather than decoded; see
+     * {@link #isView(Class)}. A {@link LuaBuffer} passed
+     * as a ByteBuffer is given as its own bytes.</p>
+     *
+     * @param obj the LuaValue to convert
+     * @param targetClass the boxed type to convert to
+     *
+     * @return the corresponding Java object
+     */
     public static Object toJava(LuaValue obj, Class<?> targetClass) {
+        if (obj.isstring() && isView(targetClass)) {
+            return toView(obj.checkstring(), targetClass);
+        } else if (obj instanceof LuaBuffer && targetClass == ByteBuffer.class) {
+            return ((LuaBuffer) obj).getBuffer();
+        }
+
         switch(targetClass.getSimpleName()) {
             case "Long": return (long) obj.checkint();
             case "Integer": return obj.checkint();
@@ -163,19 +188,36 @@ public class LuaUtil {
      * 
      * <p>Arrays are turned into Lua arrays, that is, a
      * table with numerical keys.</p>
+     *
+     * <p>LuaValues, such as a {@link LuaBuffer}, are
+     * returned as they are.</p>
      * 
      * @param obj the object to convert
      * 
      * @return the converted object
      */
     public static LuaValue toLua(Object obj) {
+        return toLua(obj, LuaMesh.internStrings ? LuaObjectValue.strings() : null);
+    }
+
+    /**
+     * Converts the given Java object into its Lua
+     * equivalent, taking strings from the given cache.
+     *
+     * @param obj the object to convert
+     * @param strings the cache to take strings from, or
+     *        null to encode them anew
+     *
+     * @return the converted object
+     */
+    static LuaValue toLua(Object obj, LuaStringCache strings) {
         if (obj == null) {
             return LuaValue.NIL;
         } else if (obj instanceof Object[]) {
             LuaTable tab = new LuaTable();
             Object[] array = (Object[]) obj;
             for (int i = 0; i < array.length; i++) {
-                tab.set(i + 1, toLua(array[i]));
+                tab.set(i + 1, toLua(array[i], strings));
             }
 
             return tab;
@@ -189,7 +231,9 @@ public class LuaUtil {
             } else if (obj instanceof Boolean) {
                 return LuaValue.valueOf((boolean) obj);
             } else if (obj instanceof String) {
-                return LuaValue.valueOf((String) obj);
+                return strings == null ? LuaValue.valueOf((String) obj) : strings.valueOf((String) obj);
+            } else if (obj instanceof LuaValue) {
+                return (LuaValue) obj;
             } else if(obj instanceof Byte) {
                 return LuaValue.valueOf((byte) obj);
             } else if(obj instanceof Character) {
@@ -253,4 +297,174 @@ public class LuaUtil {
 
         return obj;
     }
+
+    /**
+     * Returns the wrapper class of the given primitive type,
+     * or the type itself if it isn't primitive.
+     *
+     * @param type the type to box
+     *
+     * @return the boxed type
+     */
+    static Class<?> boxType(Class<?> type) {
+        if (type == boolean.class) return Boolean.class;
+        if (type == byte.class) return Byte.class;
+        if (type == char.class) return Character.class;
+        if (type == short.class) return Short.class;
+        if (type == int.class) return Integer.class;
+        if (type == long.class) return Long.class;
+        if (type == float.class) return Float.class;
+        if (type == double.class) return Double.class;
+        return type;
+    }
+
+    /**
+     * Returns the value a field of the given type holds
+     * before it is assigned, used when assigning nil.
+     *
+     * @param type the type of the value
+     *
+     * @return the default value of the type
+     */
+    static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == byte.class) return (byte) 0;
+        if (type == char.class) return '\u0000';
+        if (type == short.class) return (short) 0;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == float.class) return 0.0F;
+        if (type == double.class) return 0.0D;
+        return null;
+    }
+
+    // ---------------- string views ----------------
+
+    /**
+     * Returns whether or not Lua strings are given to
+     * parameters of the given type as a view of their bytes.
+     *
+     * <p>A {@link LuaString} is given as is. A
+     * <code>byte[]</code> is a copy of the string's bytes,
+     * since Java code may write to it, but is still never
+     * decoded. A {@link ByteBuffer} is a read-only buffer
+     * over the string's bytes. A {@link CharSequence} reads
+     * the bytes as characters if they're all ASCII, and is
+     * the decoded String otherwise.</p>
+     *
+     * <p>Arrays returned to Lua as a <code>byte[]</code> or
+     * a heap {@link ByteBuffer} become the Lua string's
+     * backing array, and must not be modified
+     * afterwards.</p>
+     *
+     * @param type the type to test
+     *
+     * @return if the type receives a view of Lua strings
+     */
+    public static boolean isView(Class<?> type) {
+        return type == LuaString.class || type == byte[].class || type == ByteBuffer.class || type == CharSequence.class;
+    }
+
+    private static Object toView(LuaString str, Class<?> type) {
+        if (type == LuaString.class) {
+            return str;
+        } else if (type == ByteBuffer.class) {
+            return ByteBuffer.wrap(str.m_bytes, str.m_offset, str.m_length).slice().asReadOnlyBuffer();
+        } else if (type == byte[].class) {
+            // Java may write to the array, and Lua strings are shared and immutable
+            byte[] bytes = new byte[str.m_length];
+            str.copyInto(0, bytes, 0, bytes.length);
+            return bytes;
+        } else {
+            for (int i = 0; i < str.m_length; i++) {
+                if (str.m_bytes[str.m_offset + i] < 0) {
+                    return str.tojstring();
+                }
+            }
+
+            return new StringView(str);
+        }
+    }
+
+    /**
+     * Converts a value returned as one of the types of
+     * {@link #isView(Class)} into a Lua string, sharing its
+     * bytes where possible.
+     *
+     * <p>Only used where the declared type is a view type;
+     * the value's own class isn't enough, as registered
+     * types may well implement {@link CharSequence}.</p>
+     *
+     * @param obj the value to convert
+     * @param strings the cache to take decoded strings
+     *        from, or null to encode them anew
+     *
+     * @return the Lua string, or nil if passed null
+     */
+    static LuaValue fromView(Object obj, LuaStringCache strings) {
+        if (obj instanceof byte[]) {
+            return LuaString.valueUsing((byte[]) obj);
+        } else if (obj instanceof ByteBuffer) {
+            return fromBuffer((ByteBuffer) obj);
+        } else if (obj instanceof StringView) {
+            return ((StringView) obj).str;
+        } else if (obj instanceof CharSequence) {
+            return strings == null ? LuaValue.valueOf(obj.toString()) : strings.valueOf(obj.toString());
+        }
+
+        return toLua(obj, strings);
+    }
+
+    private static LuaString fromBuffer(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return LuaString.valueUsing(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+
+        // direct and read-only buffers have no array to share
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return LuaString.valueUsing(bytes);
+    }
+
+    /**
+     * CharSequence reading the bytes of an ASCII Lua string
+     * as characters.
+     */
+    private static class StringView implements CharSequence {
+
+        private LuaString str;
+
+        StringView(LuaString str) {
+            this.str = str;
+        }
+
+        @Override
+        public int length() {
+            return this.str.m_length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= this.str.m_length) {
+                throw new IndexOutOfBoundsException("index " + index + " out of bounds for length " + this.str.m_length);
+            }
+
+            return (char) this.str.m_bytes[this.str.m_offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > this.str.m_length || start > end) {
+                throw new IndexOutOfBoundsException("range " + start + " to " + end + " out of bounds for length " + this.str.m_length);
+            }
+
+            return new StringView(LuaString.valueUsing(this.str.m_bytes, this.str.m_offset + start, end - start));
+        }
+
+        @Override
+        public String toString() {
+            return new String(this.str.m_bytes, this.str.m_offset, this.str.m_length, StandardCharsets.US_ASCII);
+        }
+
+    }
 }
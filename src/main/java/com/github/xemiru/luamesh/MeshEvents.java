@@ -0,0 +1,346 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Flight Recorder events emitted by LuaMesh.
+ *
+ * <p>The event classes are generated during
+ * {@link LuaMesh#init()} unless
+ * {@link LuaMesh#flightRecorder} is unset, so LuaMesh
+ * still builds and runs on JDKs without
+ * <code>jdk.jfr</code>; there, no events are ever
+ * emitted. Every event is disabled by default, and has to
+ * be enabled in the recording's settings by name:</p>
+ *
+ * <ul>
+ * <li><code>luamesh.LuaToJava</code> - Lua calling a bound
+ * Java method</li>
+ * <li><code>luamesh.JavaToLua</code> - Java calling the
+ * Lua implementation of a method</li>
+ * <li><code>luamesh.WrapperCreated</code> - a
+ * {@link LuaObjectValue} being created</li>
+ * <li><code>luamesh.Init</code> - a class being
+ * transformed or registered by {@link LuaMesh#init()}</li>
+ * </ul>
+ *
+ * <p>Each carries the name of the Java class, the Java
+ * member and the Lua name involved. Callers check the
+ * static flag of an event before creating it, which stays
+ * false unless a recording with the event enabled is
+ * running.</p>
+ */
+final class MeshEvents {
+
+    static final int LUA_TO_JAVA = 0;
+    static final int JAVA_TO_LUA = 1;
+    static final int WRAPPER = 2;
+    static final int INIT = 3;
+
+    private static final String[] NAMES = {"LuaToJava", "JavaToLua", "WrapperCreated", "Init"};
+    private static final String[] LABELS = {"Lua to Java Call", "Java to Lua Call", "Lua Wrapper Created",
+        "LuaMesh Initialization"};
+    private static final String[] DESCRIPTIONS = {
+        "Lua calling a bound Java method",
+        "Java calling the Lua implementation of a method",
+        "A Java object being wrapped for Lua",
+        "A class being transformed or registered during LuaMesh.init()"};
+    // the last field of each event: whether a call failed, or what init was doing
+    private static final String[] EXTRAS = {"failed", "failed", null, "phase"};
+
+    static volatile boolean luaToJava = false;
+    static volatile boolean javaToLua = false;
+    static volatile boolean wrappers = false;
+    static volatile boolean init = false;
+
+    private static volatile Class<?>[] types;
+    private static MethodHandle[] constructors;
+    private static MethodHandle[][] setters;
+    private static MethodHandle begin;
+    private static MethodHandle commit;
+    private static Method getEventType;
+    private static Method isEnabled;
+    private static volatile boolean reported = false;
+
+    /**
+     * Generates the event classes and starts following
+     * recordings, if this JVM has a flight recorder. Called
+     * by {@link LuaMesh#init()}.
+     */
+    static synchronized void setup() {
+        if (types != null) {
+            return;
+        }
+
+        try {
+            Class<?> event = Class.forName("jdk.jfr.Event");
+            EventLoader loader = new EventLoader(MeshEvents.class.getClassLoader());
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+            Class<?>[] defined = new Class<?>[NAMES.length];
+            constructors = new MethodHandle[NAMES.length];
+            setters = new MethodHandle[NAMES.length][];
+            for (int i = 0; i < NAMES.length; i++) {
+                defined[i] = loader.define(i);
+                constructors[i] = lookup.findConstructor(defined[i], MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+
+                int count = EXTRAS[i] == null ? 3 : 4;
+                setters[i] = new MethodHandle[count];
+                setters[i][0] = setter(lookup, defined[i], "javaClass", String.class);
+                setters[i][1] = setter(lookup, defined[i], "member", String.class);
+                setters[i][2] = setter(lookup, defined[i], "luaName", String.class);
+                if (count == 4) {
+                    setters[i][3] = setter(lookup, defined[i], EXTRAS[i], i == INIT ? String.class : boolean.class);
+                }
+            }
+
+            begin = lookup.findVirtual(event, "begin", MethodType.methodType(void.class))
+                .asType(MethodType.methodType(void.class, Object.class));
+            commit = lookup.findVirtual(event, "commit", MethodType.methodType(void.class))
+                .asType(MethodType.methodType(void.class, Object.class));
+
+            Class<?> recorder = Class.forName("jdk.jfr.FlightRecorder");
+            Class<?> eventType = Class.forName("jdk.jfr.EventType");
+            getEventType = eventType.getMethod("getEventType", Class.class);
+            isEnabled = eventType.getMethod("isEnabled");
+
+            types = defined;
+
+            // keep the flags in sync with whichever recordings are running
+            Class<?> listener = Class.forName("jdk.jfr.FlightRecorderListener");
+            recorder.getMethod("addListener", listener).invoke(null, Proxy.newProxyInstance(
+                MeshEvents.class.getClassLoader(), new Class<?>[] {listener}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "hashCode": return System.identityHashCode(proxy);
+                        case "equals": return proxy == args[0];
+                        case "toString": return "MeshEvents listener";
+                        default:
+                            refresh();
+                            return null;
+                    }
+                }));
+
+            // looking event types up initializes the flight recorder, which is expensive; don't if it isn't running
+            if ((boolean) recorder.getMethod("isInitialized").invoke(null)) {
+                refresh();
+            }
+        } catch (Throwable e) {
+            // no flight recorder, or not one we know how to use
+            LuaMesh.debug("flight recorder events are disabled: " + e);
+            types = null;
+        }
+    }
+
+    private static MethodHandle setter(MethodHandles.Lookup lookup, Class<?> type, String name, Class<?> ftype)
+        throws ReflectiveOperationException {
+        return lookup.findSetter(type, name, ftype).asType(MethodType.methodType(void.class, Object.class, ftype));
+    }
+
+    private static void refresh() {
+        try {
+            luaToJava = enabled(LUA_TO_JAVA);
+            javaToLua = enabled(JAVA_TO_LUA);
+            wrappers = enabled(WRAPPER);
+            init = enabled(INIT);
+        } catch (ReflectiveOperationException e) {
+            LuaMesh.debug("could not read which flight recorder events are enabled: " + e);
+            luaToJava = javaToLua = wrappers = init = false;
+        }
+    }
+
+    private static boolean enabled(int type) throws ReflectiveOperationException {
+        return (boolean) isEnabled.invoke(getEventType.invoke(null, types[type]));
+    }
+
+    /**
+     * Returns whether Flight Recorder events can be emitted
+     * at all on this JVM.
+     *
+     * @return if events are supported
+     */
+    static boolean isSupported() {
+        return types != null;
+    }
+
+    /**
+     * Creates and begins timing an event of the given
+     * type.
+     *
+     * @param type the type of the event
+     *
+     * @return the event, or null if events aren't
+     *         supported
+     */
+    static Object begin(int type) {
+        if (types == null) {
+            return null;
+        }
+
+        try {
+            Object event = constructors[type].invokeExact();
+            begin.invokeExact(event);
+            return event;
+        } catch (Throwable e) {
+            failed("begin", type, e);
+            return null;
+        }
+    }
+
+    /**
+     * Ends and commits an event created by
+     * {@link #begin(int)}.
+     *
+     * @param type the type of the event
+     * @param event the event, or null to do nothing
+     * @param javaClass the name of the Java class involved
+     * @param member the name of the Java member involved,
+     *        if any
+     * @param luaName the Lua name involved
+     */
+    static void commit(int type, Object event, String javaClass, String member, String luaName) {
+        commit(type, event, javaClass, member, luaName, null);
+    }
+
+    /**
+     * Ends and commits an event created by
+     * {@link #begin(int)}, setting its last field.
+     *
+     * @param type the type of the event
+     * @param event the event, or null to do nothing
+     * @param javaClass the name of the Java class involved
+     * @param member the name of the Java member involved,
+     *        if any
+     * @param luaName the Lua name involved
+     * @param extra whether the call failed, or the phase
+     *        of initialization
+     */
+    static void commit(int type, Object event, String javaClass, String member, String luaName, Object extra) {
+        if (event == null) {
+            return;
+        }
+
+        try {
+            MethodHandle[] fields = setters[type];
+            fields[0].invokeExact(event, javaClass);
+            fields[1].invokeExact(event, member);
+            fields[2].invokeExact(event, luaName);
+            if (extra instanceof Boolean) {
+                fields[3].invokeExact(event, (boolean) extra);
+            } else if (extra != null) {
+                fields[3].invokeExact(event, (String) extra);
+            }
+
+            commit.invokeExact(event);
+        } catch (Throwable e) {
+            // not worth breaking a script over
+            failed("commit", type, e);
+        }
+    }
+
+    private static void failed(String action, int type, Throwable e) {
+        // once is enough to notice a broken event class; reporting every call would flood the output
+        if (!reported) {
+            reported = true;
+            LuaMesh.debug(String.format("could not %s flight recorder event %s: %s", action, NAMES[type], e));
+        }
+    }
+
+    private MeshEvents() {
+    }
+
+    /**
+     * Generates and defines the event classes.
+     */
+    private static class EventLoader extends ClassLoader {
+
+        EventLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(int type) {
+            String name = "com/github/xemiru/luamesh/jfr/" + NAMES[type] + "Event";
+            ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+            cw.visit(V1_8, ACC_PUBLIC | ACC_SUPER, name, null, "jdk/jfr/Event", null);
+
+            annotate(cw.visitAnnotation("Ljdk/jfr/Name;", true), "luamesh." + NAMES[type]);
+            annotate(cw.visitAnnotation("Ljdk/jfr/Label;", true), LABELS[type]);
+            annotate(cw.visitAnnotation("Ljdk/jfr/Description;", true), DESCRIPTIONS[type]);
+            AnnotationVisitor enabled = cw.visitAnnotation("Ljdk/jfr/Enabled;", true);
+            enabled.visit("value", false);
+            enabled.visitEnd();
+            AnnotationVisitor category = cw.visitAnnotation("Ljdk/jfr/Category;", true);
+            AnnotationVisitor categories = category.visitArray("value");
+            categories.visit(null, "LuaMesh");
+            categories.visitEnd();
+            category.visitEnd();
+
+            field(cw, "javaClass", "Ljava/lang/String;", "Java Class");
+            field(cw, "member", "Ljava/lang/String;", "Java Member");
+            field(cw, "luaName", "Ljava/lang/String;", "Lua Name");
+            if (EXTRAS[type] != null) {
+                field(cw, EXTRAS[type], type == INIT ? "Ljava/lang/String;" : "Z",
+                    type == INIT ? "Phase" : "Failed");
+            }
+
+            MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitMethodInsn(INVOKESPECIAL, "jdk/jfr/Event", "<init>", "()V", false);
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+
+            cw.visitEnd();
+            byte[] code = cw.toByteArray();
+            return this.defineClass(name.replace('/', '.'), code, 0, code.length);
+        }
+
+        private static void field(ClassWriter cw, String name, String desc, String label) {
+            FieldVisitor fv = cw.visitField(ACC_PUBLIC, name, desc, null, null);
+            annotate(fv.visitAnnotation("Ljdk/jfr/Label;", true), label);
+            fv.visitEnd();
+        }
+
+        private static void annotate(AnnotationVisitor av, String value) {
+            av.visit("value", value);
+            av.visitEnd();
+        }
+
+    }
+
+}
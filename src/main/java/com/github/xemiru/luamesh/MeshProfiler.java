@@ -0,0 +1,415 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaClosure;
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sampling profiler telling apart time spent in Lua code,
+ * in converting values between Lua and Java, and in the
+ * Java methods behind {@link LuaMethodBind}s.
+ *
+ * <p>While running, every thread crossing the boundary
+ * between Lua and Java keeps track of the bound methods it
+ * is in and which of the three phases it is in. A
+ * background thread samples those at a fixed interval,
+ * and forgets threads once they have died. Names of Lua
+ * functions are only tracked for {@link Globals} passed to
+ * {@link #attach(Globals)}; without them, samples only
+ * show the bound methods.</p>
+ *
+ * <p>Samples are aggregated as collapsed stacks, one line
+ * per distinct stack followed by its sample count, which
+ * flame graph tools read directly. Frames are listed from
+ * the outermost call, ending with <code>[convert]</code>
+ * or <code>[java]</code> when the sample was taken in that
+ * phase.</p>
+ *
+ * <p>Only one profiler may run at a time.</p>
+ */
+public class MeshProfiler {
+
+    static final int LUA = 0;
+    static final int CONVERT = 1;
+    static final int JAVA = 2;
+
+    private static final String[] PHASES = {"[lua]", "[convert]", "[java]"};
+
+    private static volatile MeshProfiler running = null;
+    private static final ThreadLocal<Track> TRACKS = new ThreadLocal<>();
+
+    /**
+     * Returns the current thread's {@link Track} within the
+     * running profiler.
+     *
+     * @return the current Track, or null if no profiler is
+     *         running
+     */
+    static Track track() {
+        MeshProfiler profiler = running;
+        if (profiler == null) {
+            return null;
+        }
+
+        Track track = TRACKS.get();
+        if (track == null || track.profiler != profiler) {
+            track = new Track(profiler);
+            TRACKS.set(track);
+            profiler.tracks.add(track);
+        }
+
+        return track;
+    }
+
+    /**
+     * The boundary crossings of a single thread, written
+     * by the thread itself and read by the sampler.
+     */
+    static final class Track {
+
+        private final MeshProfiler profiler;
+        // weak, so tracks never keep finished coroutine threads around
+        private final WeakReference<Thread> owner;
+        private final String thread;
+        private String[] frames;
+        private boolean[] lua;
+        // depth and phase together, so the sampler never sees one without the other
+        private volatile int state;
+
+        private Track(MeshProfiler profiler) {
+            this.profiler = profiler;
+            this.owner = new WeakReference<>(Thread.currentThread());
+            this.thread = Thread.currentThread().getName();
+            this.frames = new String[32];
+            this.lua = new boolean[32];
+        }
+
+        /**
+         * Enters a bound method, in the conversion phase.
+         *
+         * @param name the name of the method
+         *
+         * @return the state to give back to
+         *         {@link #exit(int)}
+         */
+        int enter(String name) {
+            int saved = this.state;
+            this.push(name, false, CONVERT);
+            return saved;
+        }
+
+        /**
+         * Leaves the bound method or phase entered when the
+         * given state was returned.
+         *
+         * @param saved the state returned when entering
+         */
+        void exit(int saved) {
+            this.state = saved;
+        }
+
+        /**
+         * Switches to the given phase.
+         *
+         * @param phase the phase to switch to
+         *
+         * @return the state to give back to
+         *         {@link #exit(int)}
+         */
+        int phase(int phase) {
+            int saved = this.state;
+            this.state = (saved & ~3) | phase;
+            return saved;
+        }
+
+        private void push(String frame, boolean lua, int phase) {
+            int depth = this.state >>> 2;
+            if (depth == this.frames.length) {
+                // the sampler may still see the old arrays, which is fine
+                this.frames = Arrays.copyOf(this.frames, depth * 2);
+                this.lua = Arrays.copyOf(this.lua, depth * 2);
+            }
+
+            this.frames[depth] = frame;
+            this.lua[depth] = lua;
+            this.state = ((depth + 1) << 2) | phase;
+        }
+
+        private void pushLua(String frame) {
+            this.push(frame, true, this.state & 3);
+        }
+
+        private void popLua() {
+            int state = this.state;
+            int depth = state >>> 2;
+            if (depth > 0 && this.lua[depth - 1]) {
+                this.state = ((depth - 1) << 2) | (state & 3);
+            }
+        }
+
+        private boolean isDead() {
+            Thread owner = this.owner.get();
+            return owner == null || !owner.isAlive();
+        }
+
+        private String sample() {
+            int state = this.state;
+            int depth = state >>> 2;
+            int phase = state & 3;
+            String[] frames = this.frames;
+            boolean[] lua = this.lua;
+            if (depth == 0 || depth > frames.length) {
+                return null;
+            }
+
+            StringBuilder stack = new StringBuilder(this.thread);
+            for (int i = 0; i < depth; i++) {
+                stack.append(';').append(frames[i]);
+            }
+
+            if (phase != LUA || !lua[depth - 1]) {
+                stack.append(';').append(PHASES[phase]);
+            }
+
+            return stack.toString();
+        }
+
+    }
+
+    /**
+     * Debug hooks naming Lua functions as they're called.
+     */
+    private static class Frames extends DebugHooks {
+
+        private Frames(Globals globals) {
+            super(globals);
+        }
+
+        @Override
+        public void onCall(LuaFunction f) {
+            Track track = this.isRemoved() ? null : track();
+            if (track != null) {
+                track.pushLua(f.name());
+            }
+
+            super.onCall(f);
+        }
+
+        @Override
+        public void onCall(LuaClosure c, Varargs varargs, LuaValue[] stack) {
+            Track track = this.isRemoved() ? null : track();
+            if (track != null) {
+                track.pushLua(c.p.shortsource() + ":" + c.p.linedefined);
+            }
+
+            super.onCall(c, varargs, stack);
+        }
+
+        @Override
+        public void onReturn() {
+            Track track = this.isRemoved() ? null : track();
+            if (track != null) {
+                track.popLua();
+            }
+
+            super.onReturn();
+        }
+
+    }
+
+    private long interval;
+    private Queue<Track> tracks;
+    private List<Frames> attached;
+    private Map<String, long[]> samples;
+    private long sampleCount;
+    private Thread sampler;
+
+    /**
+     * Creates a new profiler sampling every millisecond.
+     */
+    public MeshProfiler() {
+        this(1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a new profiler.
+     *
+     * @param interval the time between samples
+     * @param unit the unit of interval
+     */
+    public MeshProfiler(long interval, TimeUnit unit) {
+        this.interval = unit.toNanos(interval);
+        this.tracks = new ConcurrentLinkedQueue<>();
+        this.attached = new ArrayList<>();
+        this.samples = new HashMap<>();
+    }
+
+    /**
+     * Tracks the names of Lua functions called within the
+     * given {@link Globals} while this profiler runs, until
+     * it is stopped.
+     *
+     * <p>Tracking function names makes every Lua function
+     * call slightly slower.</p>
+     *
+     * @param globals the Globals to track
+     */
+    public synchronized void attach(Globals globals) {
+        Frames frames = new Frames(globals);
+        frames.install();
+        this.attached.add(frames);
+    }
+
+    /**
+     * Starts sampling.
+     *
+     * @throws IllegalStateException if a profiler is
+     *         already running
+     */
+    public void start() {
+        synchronized (MeshProfiler.class) {
+            if (running != null) {
+                throw new IllegalStateException("another profiler is already running");
+            }
+
+            running = this;
+        }
+
+        this.sampler = new Thread(this::sample, "MeshProfiler");
+        this.sampler.setDaemon(true);
+        this.sampler.start();
+    }
+
+    /**
+     * Stops sampling, and stops tracking the names of Lua
+     * functions in every attached {@link Globals}.
+     *
+     * @throws InterruptedException if interrupted while
+     *         waiting for the sampler to stop
+     */
+    public void stop() throws InterruptedException {
+        synchronized (MeshProfiler.class) {
+            if (running != this) {
+                return;
+            }
+
+            running = null;
+        }
+
+        this.sampler.join();
+        synchronized (this) {
+            // in reverse, so each one is still on top when uninstalled
+            for (int i = this.attached.size() - 1; i >= 0; i--) {
+                this.attached.get(i).uninstall();
+            }
+
+            this.attached.clear();
+        }
+    }
+
+    /**
+     * Returns the amount of samples taken.
+     *
+     * @return the sample count
+     */
+    public synchronized long getSampleCount() {
+        return this.sampleCount;
+    }
+
+    /**
+     * Returns the samples taken so far, as counts of each
+     * collapsed stack.
+     *
+     * @return the collapsed stacks sampled
+     */
+    public synchronized Map<String, Long> getSamples() {
+        Map<String, Long> copy = new HashMap<>();
+        this.samples.forEach((stack, count) -> copy.put(stack, count[0]));
+        return copy;
+    }
+
+    /**
+     * Writes the samples taken so far to the given file as
+     * collapsed stacks.
+     *
+     * @param file the file to write to
+     *
+     * @throws IOException if the file couldn't be written
+     */
+    public void writeCollapsed(Path file) throws IOException {
+        Map<String, Long> samples = this.getSamples();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> entry : samples.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write(' ');
+                writer.write(Long.toString(entry.getValue()));
+                writer.newLine();
+            }
+        }
+    }
+
+    private void sample() {
+        while (running == this) {
+            LockSupport.parkNanos(this.interval);
+            synchronized (this) {
+                Iterator<Track> it = this.tracks.iterator();
+                while (it.hasNext()) {
+                    Track track = it.next();
+                    if (track.isDead()) {
+                        it.remove();
+                        continue;
+                    }
+
+                    String stack = track.sample();
+                    if (stack != null) {
+                        this.samples.computeIfAbsent(stack, k -> new long[1])[0]++;
+                        this.sampleCount++;
+                    }
+                }
+            }
+        }
+    }
+
+}
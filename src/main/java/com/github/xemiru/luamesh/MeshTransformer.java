@@ -321,6 +321,23 @@ public class MeshTransformer extends ClassVisitor {
         }
     }
 
+    /**
+     * Defines a class in the given class loader.
+     *
+     * @param loader the class loader to define the class in
+     * @param name the qualified Java name of the class to
+     *        create (e.g. java.lang.Integer)
+     * @param code the bytecode of the class
+     *
+     * @return the new class
+     *
+     * @throws ReflectiveOperationException if the class
+     *         loader refused to define the class
+     */
+    static Class<?> define(ClassLoader loader, String name, byte[] code) throws ReflectiveOperationException {
+        return (Class<?>) cl_define.invoke(loader, name, code, 0, code.length);
+    }
+
     public static void loadVar(MethodVisitor mv, String descriptor, int lindex, boolean box) {
         switch(descriptor) {
             case "Z": // boolean
@@ -0,0 +1,396 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import static com.github.xemiru.luamesh.LuaMesh.debug;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LoadState;
+import org.luaj.vm2.LuaClosure;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.Prototype;
+import org.luaj.vm2.compiler.DumpState;
+import org.luaj.vm2.compiler.LuaC;
+import org.luaj.vm2.luajc.JavaGen;
+import org.luaj.vm2.luajc.JavaLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cache of compiled Lua chunks, so scripts aren't parsed
+ * and compiled again for every runtime that loads them.
+ *
+ * <p>Chunks are keyed by their name and source, and stored
+ * on disk under a SHA-256 hash of both. Compiled {@link Prototype}s are immutable and are
+ * shared by every {@link Globals} loading the same chunk;
+ * each load only creates a new closure bound to the given
+ * runtime. If a directory is given, compiled chunks are
+ * also dumped there as Lua bytecode and read back by later
+ * runs instead of compiling the source again.</p>
+ *
+ * <pre>
+ * ScriptCache scripts = new ScriptCache(Paths.get("cache"));
+ * LuaPool pool = new LuaPool(4, JsePlatform::standardGlobals, g -&gt; {
+ *     g.set("lib", LuaObjectValue.of(new MyLibrary()).toLibrary());
+ * });
+ *
+ * pool.apply(g -&gt; scripts.load(g, source, "=script").call());
+ * </pre>
+ *
+ * <p>When compiling to Java, chunks are turned into JVM
+ * classes by LuaJ's luajc the first time they're loaded, so
+ * scripts run hot get compiled by the JIT like any other
+ * Java code. This needs BCEL on the classpath.</p>
+ *
+ * <p>This class is safe to use from multiple threads.</p>
+ */
+public class ScriptCache {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    /**
+     * The name and source of a chunk.
+     */
+    private static class Key {
+
+        private String name;
+        private String source;
+        private int hash;
+
+        Key(String name, String source) {
+            this.name = name;
+            this.source = source;
+            // strings cache their own hash, so loading the same source again doesn't rescan it
+            this.hash = 31 * name.hashCode() + source.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+            return this.hash == other.hash && this.name.equals(other.name) && this.source.equals(other.source);
+        }
+
+    }
+
+    /**
+     * A cached chunk.
+     */
+    private static class Entry {
+
+        private Prototype proto;
+        private String name;
+        private String classname;
+        private volatile JavaLoader loader;
+
+        Entry(Prototype proto, String name) {
+            this.proto = proto;
+            this.name = name;
+            this.classname = "luamesh_chunk_" + COUNT.incrementAndGet();
+        }
+
+        LuaFunction load(Globals globals, boolean java) {
+            if (!java) {
+                return new LuaClosure(this.proto, globals);
+            }
+
+            JavaLoader loader = this.loader;
+            if (loader == null) {
+                synchronized (this) {
+                    loader = this.loader;
+                    if (loader == null) {
+                        // classes are generated once; every load after that only instantiates them
+                        loader = new JavaLoader();
+                        loader.include(new JavaGen(this.proto, this.classname, this.name, false));
+                        this.loader = loader;
+                    }
+                }
+            }
+
+            return loader.load(this.classname, globals);
+        }
+
+    }
+
+    private Path directory;
+    private boolean java;
+    private Map<Key, Entry> entries;
+
+    /**
+     * Creates a cache keeping compiled chunks in memory
+     * only.
+     */
+    public ScriptCache() {
+        this(null, false);
+    }
+
+    /**
+     * Creates a cache keeping compiled chunks in memory and
+     * in the given directory.
+     *
+     * @param directory the directory to store compiled
+     *        chunks in, or null to keep them in memory only
+     */
+    public ScriptCache(Path directory) {
+        this(directory, false);
+    }
+
+    /**
+     * Creates a cache keeping compiled chunks in memory and
+     * in the given directory, optionally compiling them to
+     * Java classes.
+     *
+     * @param directory the directory to store compiled
+     *        chunks in, or null to keep them in memory only
+     * @param java whether to compile chunks to Java
+     *        classes
+     *
+     * @throws IllegalStateException if compiling to Java was
+     *         requested but BCEL isn't available
+     */
+    public ScriptCache(Path directory, boolean java) {
+        if (java) {
+            try {
+                Class.forName("org.apache.bcel.generic.ClassGen", false, ScriptCache.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("compiling Lua to Java requires BCEL on the classpath", e);
+            }
+        }
+
+        this.directory = directory;
+        this.java = java;
+        this.entries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the directory compiled chunks are stored in.
+     *
+     * @return the cache directory, or null if chunks are
+     *         only kept in memory
+     */
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Returns whether this cache compiles chunks to Java
+     * classes.
+     *
+     * @return if chunks are compiled to Java
+     */
+    public boolean isCompilingToJava() {
+        return this.java;
+    }
+
+    /**
+     * Returns the amount of chunks held in memory.
+     *
+     * @return the amount of cached chunks
+     */
+    public int getSize() {
+        return this.entries.size();
+    }
+
+    /**
+     * Drops every chunk held in memory. Chunks stored in the
+     * cache directory are kept.
+     */
+    public void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * Returns the compiled form of a chunk, compiling it if
+     * it isn't cached yet.
+     *
+     * @param source the source of the chunk
+     * @param chunkname the name of the chunk, as it would be
+     *        given to {@link Globals#load(String, String)}
+     *
+     * @return the compiled chunk
+     *
+     * @throws LuaError if the chunk has a syntax error
+     */
+    public Prototype compile(String source, String chunkname) {
+        return this.entry(source, chunkname).proto;
+    }
+
+    /**
+     * Loads a chunk into the given runtime, compiling it if
+     * it isn't cached yet.
+     *
+     * @param globals the runtime to load the chunk into
+     * @param source the source of the chunk
+     * @param chunkname the name of the chunk, as it would be
+     *        given to {@link Globals#load(String, String)}
+     *
+     * @return the chunk, as a function running in the given
+     *         runtime
+     *
+     * @throws LuaError if the chunk has a syntax error
+     */
+    public LuaFunction load(Globals globals, String source, String chunkname) {
+        return this.entry(source, chunkname).load(globals, this.java);
+    }
+
+    /**
+     * Loads a script file into the given runtime, compiling
+     * it if it isn't cached yet. The chunk is named after
+     * the file, as LuaJ's loadfile does.
+     *
+     * @param globals the runtime to load the script into
+     * @param script the script file
+     *
+     * @return the script, as a function running in the given
+     *         runtime
+     *
+     * @throws IOException if the file couldn't be read
+     * @throws LuaError if the script has a syntax error
+     */
+    public LuaFunction load(Globals globals, Path script) throws IOException {
+        String source = new String(Files.readAllBytes(script), StandardCharsets.UTF_8);
+        return this.load(globals, source, "@" + script.getFileName());
+    }
+
+    private Entry entry(String source, String chunkname) {
+        Key key = new Key(chunkname, source);
+        Entry entry = this.entries.get(key);
+        if (entry == null) {
+            // compiling twice on a race is cheaper than holding a map bin while compiling
+            Entry compiled = new Entry(this.read(source, chunkname), chunkname);
+            entry = this.entries.putIfAbsent(key, compiled);
+            if (entry == null) {
+                entry = compiled;
+            }
+        }
+
+        return entry;
+    }
+
+    private Prototype read(String source, String chunkname) {
+        // only chunks missing from memory get here, so only they pay for the digest
+        Path file = this.directory == null ? null : this.directory.resolve(hash(source, chunkname) + ".luac");
+        if (file != null && Files.isRegularFile(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                // null if the file doesn't even start like a compiled chunk
+                Prototype proto = LoadState.undump(in, chunkname);
+                if (proto != null) {
+                    return proto;
+                }
+
+                debug("discarding unreadable compiled chunk " + file);
+            } catch (IOException | RuntimeException e) {
+                debug("discarding unreadable compiled chunk " + file + ": " + e);
+            }
+        }
+
+        Prototype proto;
+        try {
+            proto = LuaC.instance.compile(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)),
+                chunkname);
+        } catch (IOException e) {
+            // reading from memory doesn't fail
+            throw new LuaError(e);
+        }
+
+        if (file != null) {
+            this.write(file, proto);
+        }
+
+        return proto;
+    }
+
+    private void write(Path file, Prototype proto) {
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    DumpState.dump(proto, out, false);
+                }
+
+                // other processes may share the directory; never let them see a partial file
+                try {
+                    Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            // the cache is only an optimization; carry on with the compiled chunk
+            debug("could not store compiled chunk " + file + ": " + e);
+        }
+    }
+
+    private static String hash(String source, String chunkname) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(chunkname.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(source.getBytes(StandardCharsets.UTF_8));
+
+            byte[] bytes = digest.digest();
+            char[] hex = new char[bytes.length * 2];
+            for (int i = 0; i < bytes.length; i++) {
+                hex[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+                hex[i * 2 + 1] = HEX[bytes[i] & 0xF];
+            }
+
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM is required to have SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,254 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns an instance of a tuple type, a class annotated
+ * with <code>@LuaType(tuple = true)</code>, into the
+ * multiple values returned to Lua by a bound method.
+ *
+ * <p>The values are the fields named by
+ * {@link LuaType#fields()}, or else the tuple's non-static,
+ * non-synthetic fields in the order reflection reports
+ * them. Readers are generated next to the
+ * tuple's class so that primitive fields are read and
+ * converted to Lua numbers without being boxed; tuples with
+ * private fields are read through method handles instead.</p>
+ */
+public abstract class TupleReader {
+
+    private static final String INTERNAL = Type.getInternalName(TupleReader.class);
+    private static final String VALUE = "org/luaj/vm2/LuaValue";
+    private static final String VARARGS_DESC = "Lorg/luaj/vm2/Varargs;";
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    /**
+     * Returns a reader for the given type if it's a tuple
+     * type.
+     *
+     * @param type the type to read
+     *
+     * @return the reader, or null if the type isn't a tuple
+     *         type
+     */
+    static TupleReader create(Class<?> type) {
+        LuaType annot = type.getDeclaredAnnotation(LuaType.class);
+        if (annot == null || !annot.tuple()) {
+            return null;
+        }
+
+        List<Field> fields = new ArrayList<>();
+        if (annot.fields().length > 0) {
+            for (String name : annot.fields()) {
+                Field field;
+                try {
+                    field = type.getDeclaredField(name);
+                } catch (NoSuchFieldException e) {
+                    field = null;
+                }
+
+                if (field == null || Modifier.isStatic(field.getModifiers())) {
+                    throw new InvalidCoercionTargetException(
+                        String.format("tuple class %s has no instance field %s", type.getName(), name));
+                }
+
+                fields.add(field);
+            }
+        } else {
+            for (Field field : type.getDeclaredFields()) {
+                // synthetic fields, like the outer instance of inner classes, aren't the tuple's to return
+                if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                    fields.add(field);
+                }
+            }
+        }
+
+        boolean direct = type.getClassLoader() != null;
+        for (Field field : fields) {
+            direct &= !Modifier.isPrivate(field.getModifiers());
+        }
+
+        if (fields.isEmpty()) {
+            throw new InvalidCoercionTargetException(String.format("tuple class %s has no fields", type.getName()));
+        }
+
+        if (direct) {
+            String name = Type.getInternalName(type) + "$$LuaTuple" + COUNT.incrementAndGet();
+            try {
+                byte[] code = generate(name, type, fields);
+                Class<?> reader = MeshTransformer.define(type.getClassLoader(), name.replace('/', '.'), code);
+                return (TupleReader) reader.getDeclaredConstructor().newInstance();
+            } catch (Throwable e) {
+                // the class loader may not see us, or may refuse to define classes for us
+                LuaMesh.debug(String.format("tuple class %s is read through method handles: %s", type.getName(), e));
+            }
+        }
+
+        MethodHandle[] getters = new MethodHandle[fields.size()];
+        try {
+            for (int i = 0; i < getters.length; i++) {
+                Field field = fields.get(i);
+                field.setAccessible(true);
+                getters[i] = MethodHandles.lookup().unreflectGetter(field);
+            }
+        } catch (IllegalAccessException e) {
+            // let it cause a crash, this isn't good
+            throw new RuntimeException(e);
+        }
+
+        return new HandleReader(getters);
+    }
+
+    private static byte[] generate(String name, Class<?> type, List<Field> fields) {
+        String owner = Type.getInternalName(type);
+
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, name, null, INTERNAL, null);
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, INTERNAL, "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC, "read", "(Ljava/lang/Object;)" + VARARGS_DESC, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, owner);
+        mv.visitVarInsn(ASTORE, 2);
+
+        int count = fields.size();
+        if (count <= 3) {
+            // small tuples chain into pairs rather than filling an array
+            for (Field field : fields) {
+                readField(mv, owner, field);
+            }
+
+            if (count == 2) {
+                mv.visitMethodInsn(INVOKESTATIC, VALUE, "varargsOf",
+                    "(L" + VALUE + ";" + VARARGS_DESC + ")" + VARARGS_DESC, false);
+            } else if (count == 3) {
+                mv.visitMethodInsn(INVOKESTATIC, VALUE, "varargsOf",
+                    "(L" + VALUE + ";L" + VALUE + ";" + VARARGS_DESC + ")" + VARARGS_DESC, false);
+            }
+        } else {
+            mv.visitLdcInsn(count);
+            mv.visitTypeInsn(ANEWARRAY, VALUE);
+            for (int i = 0; i < count; i++) {
+                mv.visitInsn(DUP);
+                mv.visitLdcInsn(i);
+                readField(mv, owner, fields.get(i));
+                mv.visitInsn(AASTORE);
+            }
+
+            mv.visitMethodInsn(INVOKESTATIC, VALUE, "varargsOf", "([L" + VALUE + ";)" + VARARGS_DESC, false);
+        }
+
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void readField(MethodVisitor mv, String owner, Field field) {
+        Class<?> type = field.getType();
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitFieldInsn(GETFIELD, owner, field.getName(), Type.getDescriptor(type));
+
+        if (type == boolean.class) {
+            mv.visitMethodInsn(INVOKESTATIC, VALUE, "valueOf", "(Z)Lorg/luaj/vm2/LuaBoolean;", false);
+        } else if (type == int.class || type == short.class || type == byte.class || type == char.class) {
+            mv.visitMethodInsn(INVOKESTATIC, VALUE, "valueOf", "(I)Lorg/luaj/vm2/LuaInteger;", false);
+        } else if (type == long.class) {
+            mv.visitMethodInsn(INVOKESTATIC, "org/luaj/vm2/LuaInteger", "valueOf", "(J)Lorg/luaj/vm2/LuaNumber;", false);
+        } else if (type == float.class || type == double.class) {
+            if (type == float.class) {
+                mv.visitInsn(F2D);
+            }
+
+            mv.visitMethodInsn(INVOKESTATIC, VALUE, "valueOf", "(D)Lorg/luaj/vm2/LuaNumber;", false);
+        } else {
+            mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(LuaUtil.class), "toLua",
+                "(Ljava/lang/Object;)L" + VALUE + ";", false);
+        }
+    }
+
+    /**
+     * Reads the fields of the given tuple.
+     *
+     * @param tuple the tuple to read, an instance of the
+     *        reader's tuple type
+     *
+     * @return the values of the tuple's fields
+     */
+    public abstract Varargs read(Object tuple);
+
+    /**
+     * Reader of tuples that can't be read directly.
+     */
+    private static class HandleReader extends TupleReader {
+
+        private MethodHandle[] getters;
+
+        HandleReader(MethodHandle[] getters) {
+            this.getters = getters;
+        }
+
+        @Override
+        public Varargs read(Object tuple) {
+            LuaValue[] values = new LuaValue[this.getters.length];
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = LuaUtil.toLua(this.getters[i].invoke(tuple));
+                }
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+
+            return values.length == 1 ? values[0] : LuaValue.varargsOf(values);
+        }
+
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Unmodifiable List view of the trailing arguments of a
+ * call from Lua, given to the trailing List parameter of a
+ * bound method marked with {@link LuaType#rest()}.
+ *
+ * <p>Arguments are converted as they're read rather than
+ * copied up front, or given as they are if the list is
+ * declared as a list of {@link LuaValue}s. The arguments
+ * may live on the calling Lua function's stack, so the
+ * list is only valid during the call; methods keeping it
+ * should copy it.</p>
+ */
+final class VarargsList extends AbstractList<Object> implements RandomAccess {
+
+    /**
+     * Returns whether or not the given method takes the
+     * trailing arguments of its calls as its last parameter:
+     * a {@link Varargs}, Java varargs, or a List if the
+     * method asked for it.
+     *
+     * <p>A List parameter is otherwise a single argument
+     * like any other, such as a Java list passed back from
+     * Lua.</p>
+     *
+     * @param method the method to test
+     * @param lists whether a trailing List takes the
+     *        trailing arguments, as set by
+     *        {@link LuaType#rest()}
+     *
+     * @return if the method is variadic
+     */
+    static boolean isVariadic(Method method, boolean lists) {
+        Class<?>[] types = method.getParameterTypes();
+        if (types.length == 0) {
+            return false;
+        }
+
+        Class<?> last = types[types.length - 1];
+        return last == Varargs.class || method.isVarArgs() || (lists && last == List.class);
+    }
+
+    /**
+     * Returns whether or not the given variadic method takes
+     * its trailing arguments as Lua values, being a list or
+     * array of LuaValues.
+     *
+     * @param method the method to test
+     *
+     * @return if the method's trailing arguments aren't
+     *         converted
+     */
+    static boolean isRaw(Method method) {
+        Type[] types = method.getGenericParameterTypes();
+        Type last = types[types.length - 1];
+        if (last instanceof Class) {
+            Class<?> component = ((Class<?>) last).getComponentType();
+            return component != null && LuaValue.class.isAssignableFrom(component);
+        } else if (last instanceof ParameterizedType) {
+            Type element = ((ParameterizedType) last).getActualTypeArguments()[0];
+            if (element instanceof WildcardType) {
+                element = ((WildcardType) element).getUpperBounds()[0];
+            }
+
+            return element instanceof Class && LuaValue.class.isAssignableFrom((Class<?>) element);
+        }
+
+        return false;
+    }
+
+    private Varargs args;
+    private int start;
+    private int size;
+    private boolean raw;
+
+    VarargsList(Varargs args, int start, int size, boolean raw) {
+        this.args = args;
+        this.start = start;
+        this.size = size;
+        this.raw = raw;
+    }
+
+    @Override
+    public Object get(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for length " + this.size);
+        }
+
+        LuaValue value = this.args.arg(this.start + index);
+        return this.raw ? value : LuaUtil.toJava(value, false);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+}
@@ -0,0 +1,228 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An unchanging copy of the state of the cache of
+ * {@link LuaObjectValue}s, retrieved through
+ * {@link LuaMesh#getWrapperStats()}.
+ *
+ * <p>Sizes are estimates for a 64-bit JVM using compressed
+ * references. They count the wrapper, its table storage and
+ * its cache entry, but not the Java object it holds or the
+ * values stored in its table.</p>
+ *
+ * <p>Hits and misses count lookups of every cache, but live
+ * wrappers and their sizes only cover the global cache, not
+ * the caches of {@link LuaPool} runtimes.</p>
+ */
+public class WrapperStats {
+
+    private long hits;
+    private long misses;
+    private long cleared;
+    private long live;
+    private long bytes;
+    private Map<Class<?>, Usage> types;
+
+    WrapperStats(long hits, long misses, long cleared, Map<Class<?>, Usage> types) {
+        this.hits = hits;
+        this.misses = misses;
+        this.cleared = cleared;
+        this.types = Collections.unmodifiableMap(types);
+        for (Usage usage : types.values()) {
+            this.live += usage.live;
+            this.bytes += usage.bytes;
+        }
+    }
+
+    /**
+     * Returns the amount of calls to
+     * {@link LuaObjectValue#of(Object)} that returned an
+     * existing wrapper.
+     *
+     * @return the cache hit count
+     */
+    public long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Returns the amount of calls to
+     * {@link LuaObjectValue#of(Object)} that had to create a
+     * new wrapper.
+     *
+     * @return the cache miss count
+     */
+    public long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Returns the fraction of calls to
+     * {@link LuaObjectValue#of(Object)} that returned an
+     * existing wrapper.
+     *
+     * @return the hit rate, between 0 and 1, or 0 if there
+     *         were no calls
+     */
+    public double getHitRate() {
+        long calls = this.hits + this.misses;
+        return calls == 0 ? 0 : (double) this.hits / calls;
+    }
+
+    /**
+     * Returns the amount of wrappers that were garbage
+     * collected.
+     *
+     * @return the cleared wrapper count
+     */
+    public long getCleared() {
+        return this.cleared;
+    }
+
+    /**
+     * Returns the amount of wrappers currently in the
+     * cache.
+     *
+     * <p>A steadily growing count while scripts are idle
+     * usually means something keeps wrappers reachable.</p>
+     *
+     * @return the live wrapper count
+     */
+    public long getLive() {
+        return this.live;
+    }
+
+    /**
+     * Returns the estimated amount of memory used by all
+     * live wrappers, in bytes.
+     *
+     * @return the estimated size of all wrappers
+     */
+    public long getEstimatedBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Returns the usage of live wrappers, keyed by the
+     * class of the wrapped objects and ordered by class
+     * name.
+     *
+     * @return the usage of each class with live wrappers
+     */
+    public Map<Class<?>, Usage> getTypes() {
+        return this.types;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d live wrappers, ~%d bytes, %d hits, %d misses (%.1f%% hit rate), %d cleared",
+            this.live, this.bytes, this.hits, this.misses, this.getHitRate() * 100, this.cleared);
+    }
+
+    /**
+     * The live wrappers of a single class.
+     */
+    public static class Usage {
+
+        private Class<?> type;
+        private String name;
+        private LuaMeta meta;
+        private long live;
+        private long bytes;
+
+        Usage(Class<?> type, String name, LuaMeta meta) {
+            this.type = type;
+            this.name = name;
+            this.meta = meta;
+        }
+
+        void add(long bytes) {
+            this.live++;
+            this.bytes += bytes;
+        }
+
+        /**
+         * @return the class of the wrapped objects
+         */
+        public Class<?> getType() {
+            return this.type;
+        }
+
+        /**
+         * Returns the Lua typename of the wrapped objects,
+         * for display. Classes of different packages may
+         * share the same typename.
+         *
+         * @return the Lua typename of the wrapped objects
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Returns the {@link LuaMeta} of the wrapped objects.
+         *
+         * @return the LuaMeta of the type, or null if the
+         *         type isn't registered with LuaMesh
+         */
+        public LuaMeta getMeta() {
+            return this.meta;
+        }
+
+        /**
+         * @return the amount of live wrappers of this type
+         */
+        public long getLive() {
+            return this.live;
+        }
+
+        /**
+         * @return the estimated size of the live wrappers of
+         *         this type, in bytes
+         */
+        public long getEstimatedBytes() {
+            return this.bytes;
+        }
+
+        /**
+         * @return the estimated mean size of a wrapper of
+         *         this type, in bytes
+         */
+        public long getBytesPerWrapper() {
+            return this.live == 0 ? 0 : this.bytes / this.live;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d live, ~%d bytes", this.name, this.live, this.bytes);
+        }
+
+    }
+
+}
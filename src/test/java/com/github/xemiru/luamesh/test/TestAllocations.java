@@ -0,0 +1,138 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh.test;
+
+import com.github.xemiru.luamesh.test.objects.ObjectAllocations;
+import com.github.xemiru.luamesh.test.objects.UnidirectionalDirectTarget;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import static com.github.xemiru.luamesh.LuaObjectValue.of;
+import static com.github.xemiru.luamesh.test.Utility.init;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestAllocations {
+
+    private static final int WARMUP = 20000;
+    private static final int RUNS = 20000;
+
+    private static com.sun.management.ThreadMXBean threads;
+    private static Properties budgets;
+
+    // typed loosely; JUnit resolving the fields would load ObjectAllocations before LuaMesh.init()
+    private Object obj;
+    private LuaValue wrapper;
+
+    @BeforeClass
+    public static void load() throws IOException {
+        Assume.assumeTrue("allocations can't be measured on this JVM",
+            ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        budgets = new Properties();
+        try (InputStream in = TestAllocations.class.getResourceAsStream("/allocation-budgets.properties")) {
+            assertNotNull("allocation-budgets.properties is missing", in);
+            budgets.load(in);
+        }
+    }
+
+    @Before
+    public void before() {
+        init();
+        this.obj = new ObjectAllocations();
+        this.wrapper = of(this.obj);
+    }
+
+    @Test
+    public void bindCall() {
+        LuaValue add = this.wrapper.get("add");
+        Varargs args = LuaValue.varargsOf(this.wrapper, LuaValue.valueOf(1), LuaValue.valueOf(2));
+        check("bindCall", () -> add.invoke(args));
+    }
+
+    @Test
+    public void directBindCall() {
+        LuaValue direct = of(new UnidirectionalDirectTarget());
+        LuaValue add = direct.get("add");
+        Varargs args = LuaValue.varargsOf(direct, LuaValue.valueOf(1), LuaValue.valueOf(2));
+        check("directBindCall", () -> add.invoke(args));
+    }
+
+    @Test
+    public void fieldRead() {
+        LuaValue key = LuaValue.valueOf("count");
+        check("fieldRead", () -> this.wrapper.get(key));
+    }
+
+    @Test
+    public void cachedWrapper() {
+        check("cachedWrapper", () -> of(this.obj));
+    }
+
+    @Test
+    public void wovenCall() {
+        // not a lambda, which would be a method of this class taking an ObjectAllocations
+        ObjectAllocations obj = (ObjectAllocations) this.obj;
+        check("wovenCall", new Runnable() {
+            @Override
+            public void run() {
+                obj.add(1, 2);
+            }
+        });
+    }
+
+    private void check(String name, Runnable op) {
+        String budget = budgets.getProperty(name);
+        assertNotNull("no allocation budget for " + name, budget);
+
+        for (int i = 0; i < WARMUP; i++) {
+            op.run();
+        }
+
+        long id = Thread.currentThread().getId();
+        long start = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < RUNS; i++) {
+            op.run();
+        }
+
+        double perOp = (double) (threads.getThreadAllocatedBytes(id) - start) / RUNS;
+        Utility.println(String.format("%s allocates %.1f bytes per operation (budget %s)", name, perOp, budget));
+        assertTrue(String.format("%s allocated %.1f bytes per operation, over its budget of %s", name, perOp, budget),
+            perOp <= Long.parseLong(budget));
+    }
+
+}
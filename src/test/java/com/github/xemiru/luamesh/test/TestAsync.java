@@ -0,0 +1,94 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh.test;
+
+import com.github.xemiru.luamesh.LuaScheduler;
+import com.github.xemiru.luamesh.test.objects.ObjectAsync;
+import org.junit.Before;
+import org.junit.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.github.xemiru.luamesh.LuaObjectValue.of;
+import static com.github.xemiru.luamesh.test.Utility.init;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestAsync {
+
+    private Globals g;
+
+    @Before
+    public void before() {
+        this.g = init();
+        this.g.set("async", of(new ObjectAsync()));
+    }
+
+    @Test
+    public void scheduled() throws Exception {
+        LuaScheduler scheduler = new LuaScheduler(g);
+        LuaValue func = g.load("local x = ... return async:later(x) + async:slow(x)");
+
+        List<CompletableFuture<Varargs>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            results.add(scheduler.spawn(func, LuaValue.valueOf(i)));
+        }
+
+        scheduler.run();
+        long elapsed = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(0, scheduler.getTaskCount());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i * 3 + 1, results.get(i).get().arg1().checkint());
+        }
+
+        // 100 tasks each waiting 100ms in sequence would take 10 seconds
+        assertTrue("Tasks did not wait concurrently (took " + elapsed + "ms).", elapsed < 5000);
+    }
+
+    @Test
+    public void errors() throws Exception {
+        LuaScheduler scheduler = new LuaScheduler(g);
+        CompletableFuture<Varargs> caught = scheduler.spawn(
+            g.load("local ok, err = pcall(async.fail, async) return err"), LuaValue.NONE);
+        CompletableFuture<Varargs> uncaught = scheduler.spawn(g.load("async:fail()"), LuaValue.NONE);
+
+        scheduler.run();
+        assertTrue(caught.get().arg1().checkjstring().contains("nope"));
+        assertTrue(uncaught.isCompletedExceptionally());
+    }
+
+    @Test
+    public void unscheduled() {
+        // no scheduler, so these just block
+        assertEquals(7, g.load("return async:later(2) + async:slow(2)").call().checkint());
+    }
+
+}
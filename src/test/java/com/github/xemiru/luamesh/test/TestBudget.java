@@ -0,0 +1,136 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh.test;
+
+import com.github.xemiru.luamesh.ExecutionBudget;
+import com.github.xemiru.luamesh.test.objects.ObjectMethods;
+import org.junit.Before;
+import org.junit.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.xemiru.luamesh.LuaObjectValue.of;
+import static com.github.xemiru.luamesh.test.Utility.func;
+import static com.github.xemiru.luamesh.test.Utility.init;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestBudget {
+
+    private Globals g;
+
+    @Before
+    public void before() {
+        init();
+        this.g = JsePlatform.standardGlobals();
+        this.g.set("obj", of(new ObjectMethods()));
+    }
+
+    @Test
+    public void withinBudget() {
+        ExecutionBudget budget = new ExecutionBudget(100000);
+        LuaValue func = g.load("local x = 0 for i = 1, 1000 do x = x + i end return x");
+        assertEquals(500500, budget.call(g, func, LuaValue.NONE).arg1().checkint());
+        assertTrue(budget.getUsed() > 0);
+
+        // the hooks are gone once the call returns
+        assertNull(g.debuglib);
+        assertEquals(LuaValue.NIL, g.get("debug"));
+        assertEquals(LuaValue.NIL, g.get("package").get("loaded").get("debug"));
+    }
+
+    @Test
+    public void loops() {
+        exceed("while true do end");
+        exceed("while true do pcall(function() while true do end end) end");
+        exceed("coroutine.wrap(function() while true do end end)()");
+    }
+
+    @Test
+    public void methodBoundary() {
+        LuaValue obj = g.get("obj");
+        exceed(func(args -> {
+            try {
+                g.load("while true do end").call();
+            } catch (LuaError swallowed) {
+                // Java swallowing the error means no more Lua instructions to hook, so the method raises it
+            }
+
+            return obj.get("intMethod").call(obj, LuaValue.valueOf(1), LuaValue.valueOf(2));
+        }));
+    }
+
+    @Test(timeout = 10000)
+    public void sharedBudget() throws Exception {
+        ExecutionBudget budget = new ExecutionBudget(1000000);
+        String script = "while true do pcall(function() while true do end end) end";
+
+        // each thread runs its own Globals under the same budget, which must stop both
+        Thread[] threads = new Thread[4];
+        AtomicInteger stopped = new AtomicInteger();
+        for (int i = 0; i < threads.length; i++) {
+            Globals globals = JsePlatform.standardGlobals();
+            LuaValue func = globals.load(script);
+            threads[i] = new Thread(() -> {
+                try {
+                    budget.call(globals, func, LuaValue.NONE);
+                } catch (LuaError e) {
+                    stopped.incrementAndGet();
+                }
+            });
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(threads.length, stopped.get());
+        assertTrue(budget.isExceeded());
+    }
+
+    private void exceed(String script) {
+        exceed(g.load(script));
+    }
+
+    private void exceed(LuaValue function) {
+        ExecutionBudget budget = new ExecutionBudget(100000);
+        try {
+            budget.call(g, function, LuaValue.NONE);
+            fail("Function ran past its budget.");
+        } catch (LuaError e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("execution budget"));
+            assertTrue(budget.isExceeded());
+        }
+
+        assertNull(g.debuglib);
+    }
+
+}
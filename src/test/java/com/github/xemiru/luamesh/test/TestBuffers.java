@@ -0,0 +1,104 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh.test;
+
+import com.github.xemiru.luamesh.LuaBuffer;
+import org.junit.Before;
+import org.junit.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaError;
+
+import java.nio.ByteBuffer;
+
+import static com.github.xemiru.luamesh.test.Utility.init;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestBuffers {
+
+    private Globals g;
+
+    @Before
+    public void before() {
+        g = init();
+    }
+
+    @Test
+    public void indexing() {
+        LuaBuffer ints = LuaBuffer.allocate(LuaBuffer.Type.INT, 4);
+        g.set("ints", ints);
+
+        assertEquals(4, g.load("return #ints").call().checkint());
+        g.load("for i = 1, #ints do ints[i] = i * 10 end").call();
+        assertEquals(20, ints.getBuffer().getInt(4));
+        assertEquals(100, g.load("return ints:sum()").call().checkint());
+        assertTrue(g.load("return ints[5]").call().isnil());
+
+        try {
+            g.load("ints[5] = 1").call();
+            fail("wrote past the end of the buffer");
+        } catch (LuaError e) {
+            assertTrue(e.getMessage().contains("out of range"));
+        }
+
+        try {
+            g.load("ints[1] = 1.5").call();
+            fail("wrote a decimal number into an int buffer");
+        } catch (LuaError e) {
+            assertTrue(e.getMessage().contains("integer expected"));
+        }
+    }
+
+    @Test
+    public void sharing() {
+        ByteBuffer shared = ByteBuffer.allocateDirect(8 * 3);
+        LuaBuffer doubles = LuaBuffer.wrap(shared, LuaBuffer.Type.DOUBLE);
+        g.set("doubles", doubles);
+
+        shared.putDouble(8, 2.5);
+        assertEquals(2.5, g.load("return doubles[2]").call().checkdouble(), 0);
+        g.load("doubles:fill(0.5)").call();
+        assertEquals(0.5, shared.getDouble(16), 0);
+    }
+
+    @Test
+    public void copying() {
+        LuaBuffer floats = LuaBuffer.allocate(LuaBuffer.Type.FLOAT, 4);
+        LuaBuffer doubles = LuaBuffer.allocate(LuaBuffer.Type.DOUBLE, 4);
+        for (int i = 0; i < 4; i++) {
+            floats.setNumber(i, i + 1);
+        }
+
+        g.set("floats", floats);
+        g.set("doubles", doubles);
+
+        // converting copy, then an overlapping copy within one buffer
+        g.load("doubles:copy(floats, 2, 1, 3)").call();
+        assertEquals(2 + 3 + 4, doubles.sum(), 0);
+        g.load("floats:copy(floats, 1, 2, 3)").call();
+        assertEquals(1 + 1 + 2 + 3, floats.sum(), 0);
+    }
+
+}
@@ -0,0 +1,100 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh.test;
+
+import com.github.xemiru.luamesh.test.objects.UnidirectionalDirectTarget;
+import org.junit.Before;
+import org.junit.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+import static com.github.xemiru.luamesh.LuaObjectValue.of;
+import static com.github.xemiru.luamesh.test.Utility.init;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.luaj.vm2.LuaValue.valueOf;
+
+/**
+ * Covers the direct invoker path, which only
+ * {@link UnidirectionalDirectTarget} is generated with; the
+ * rest of the suite runs on the default method handles.
+ */
+public class TestDirectInvokers {
+
+    private Globals g;
+
+    @Before
+    public void before() {
+        this.g = init();
+        this.g.set("direct", of(new UnidirectionalDirectTarget()));
+    }
+
+    @Test
+    public void calls() {
+        assertEquals(3, g.load("return direct:add(1, 2)").call().checkint());
+        assertEquals("ab", g.load("return direct:concat('a', 'b')").call().checkjstring());
+
+        // integers widen to doubles, whichever way the method is called
+        LuaValue direct = g.get("direct");
+        assertEquals(3D, direct.get("addDoubles").call(direct, valueOf(1), valueOf(2)).checkdouble(), 0);
+        assertEquals(3D, g.load("return direct:addDoubles(1, 2)").call().checkdouble(), 0);
+    }
+
+    @Test
+    public void conversions() {
+        LuaValue direct = g.get("direct");
+        assertError("bad argument: integer expected, got number", () -> direct.get("add").call(direct,
+            valueOf(1.5), valueOf(2)));
+        assertError("bad argument: integer expected, got string", () -> direct.get("add").call(direct,
+            valueOf("a"), valueOf(2)));
+        assertError("attempt to index local 'self'", () -> direct.get("add").call());
+
+        // a self of the wrong type fails the guard and goes through the method handle
+        assertError("bad argument", () -> direct.get("add").call(of(new Object()), valueOf(1), valueOf(2)));
+    }
+
+    @Test
+    public void variadic() {
+        assertEquals(6D, g.load("return direct:sum(1, 2, 3)").call().checkdouble(), 0);
+        assertEquals(0D, g.load("return direct:sum()").call().checkdouble(), 0);
+        assertError("bad argument", () -> g.load("return direct:sum(1, 'a')").call());
+
+        Varargs rest = g.load("return direct:rest(1, 2, 3)").invoke();
+        assertEquals(2, rest.narg());
+        assertEquals(3, rest.arg(2).checkint());
+    }
+
+    private void assertError(String expected, Runnable call) {
+        try {
+            call.run();
+            fail("Call didn't fail.");
+        } catch (LuaError e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(expected));
+        }
+    }
+
+}
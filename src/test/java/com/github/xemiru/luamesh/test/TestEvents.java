@@ -0,0 +1,97 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh.test;
+
+import com.github.xemiru.luamesh.test.objects.ObjectMethods;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.luaj.vm2.Globals;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.github.xemiru.luamesh.LuaObjectValue.of;
+import static com.github.xemiru.luamesh.test.Utility.init;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Flight Recorder isn't part of the Java 8 API these tests
+ * compile against, so recordings are driven reflectively.
+ */
+public class TestEvents {
+
+    private Globals g;
+
+    @Before
+    public void before() {
+        this.g = init();
+    }
+
+    @Test
+    public void events() throws Exception {
+        Class<?> recording;
+        try {
+            recording = Class.forName("jdk.jfr.Recording");
+        } catch (ClassNotFoundException e) {
+            Assume.assumeNoException("No flight recorder on this JVM.", e);
+            return;
+        }
+
+        Object rec = recording.getConstructor().newInstance();
+        Method enable = recording.getMethod("enable", String.class);
+        enable.invoke(rec, "luamesh.LuaToJava");
+        enable.invoke(rec, "luamesh.WrapperCreated");
+        recording.getMethod("start").invoke(rec);
+
+        g.set("events", of(new ObjectMethods()));
+        g.load("events:intMethod(1, 2)").call();
+
+        recording.getMethod("stop").invoke(rec);
+        Path file = Files.createTempFile("luamesh", ".jfr");
+        try {
+            recording.getMethod("dump", Path.class).invoke(rec, file);
+            recording.getMethod("close").invoke(rec);
+
+            Set<String> seen = new HashSet<>();
+            List<?> events = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile")
+                .getMethod("readAllEvents", Path.class).invoke(null, file);
+            for (Object event : events) {
+                Object type = event.getClass().getMethod("getEventType").invoke(event);
+                Method getString = event.getClass().getMethod("getString", String.class);
+                seen.add(type.getClass().getMethod("getName").invoke(type) + " " + getString.invoke(event, "luaName"));
+            }
+
+            assertTrue(seen.toString(), seen.contains("luamesh.LuaToJava ObjectMethods.intMethod"));
+            assertTrue(seen.toString(), seen.contains("luamesh.WrapperCreated ObjectMethods"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
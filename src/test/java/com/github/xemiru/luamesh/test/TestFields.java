@@ -24,15 +24,18 @@
 package com.github.xemiru.luamesh.test;
 
 import com.github.xemiru.luamesh.test.objects.ObjectFields;
+import com.github.xemiru.luamesh.test.objects.ObjectProperties;
 import org.junit.Before;
 import org.junit.Test;
 import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaError;
 import org.luaj.vm2.LuaValue;
 
 import static com.github.xemiru.luamesh.LuaObjectValue.of;
 import static com.github.xemiru.luamesh.test.Utility.init;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.luaj.vm2.LuaValue.valueOf;
 
 public class TestFields {
@@ -89,6 +92,53 @@ public class TestFields {
         assertEquals(objj, jobj.obj);
 
         assertTrue(obj.get("poopy").isfunction());
+
+        // raw access reaches the Java fields too, rather than the object's own table
+        jobj.intt = 7;
+        assertEquals(7, g.load("return rawget(obj, 'intt')").call().checkint());
+        g.load("rawset(obj, 'intt', 8)").call();
+        assertEquals(8, jobj.intt);
+        assertEquals(8, obj.get("intt").checkint());
+    }
+
+    @Test
+    public void properties() {
+        ObjectProperties jobj = new ObjectProperties();
+        LuaValue obj = of(jobj);
+        g.set("obj", obj);
+
+        assertEquals("default", obj.get("label").checkjstring());
+        g.load("obj.label = 'changed'").call();
+        assertEquals("changed", jobj.getLabel());
+        assertEquals(1, jobj.sets);
+
+        assertEquals(7, g.load("return obj.size").call().checkint());
+        try {
+            g.load("obj.size = 2").call();
+            fail("read-only property was assigned");
+        } catch (LuaError e) {
+            assertTrue(e.getMessage().contains("read-only"));
+        }
+
+        assertTrue(obj.get("enabled").checkboolean());
+        obj.set("enabled", valueOf(false));
+        assertEquals(false, jobj.isEnabled());
+
+        // accessors stay callable, other keys are stored in the object
+        assertEquals("changed", g.load("return obj:getLabel()").call().checkjstring());
+        g.load("obj.other = 5").call();
+        assertEquals(5, obj.rawget("other").checkint());
+        assertEquals(1, jobj.sets);
+
+        // properties are only reached through __index and __newindex, so raw access leaves them alone
+        assertTrue(g.load("return rawget(obj, 'label')").call().isnil());
+        g.load("rawset(obj, 'label', 'shadow')").call();
+        assertEquals("changed", jobj.getLabel());
+        assertEquals("shadow", obj.get("label").checkjstring());
+
+        // unmarked accessors are only methods
+        assertTrue(obj.get("count").isnil());
+        assertEquals(4, g.load("return obj:getCount()").call().checkint());
     }
 
 }
@@ -0,0 +1,69 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh.test;
+
+import com.github.xemiru.luamesh.test.objects.ObjectChild;
+import com.github.xemiru.luamesh.test.objects.ObjectParent;
+import org.junit.Before;
+import org.junit.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaValue;
+
+import static com.github.xemiru.luamesh.LuaObjectValue.of;
+import static com.github.xemiru.luamesh.test.Utility.init;
+import static org.junit.Assert.assertEquals;
+import static org.luaj.vm2.LuaValue.valueOf;
+
+public class TestInheritance {
+
+    private Globals g;
+
+    @Before
+    public void before() {
+        this.g = init();
+    }
+
+    @Test
+    public void inheritance() {
+        ObjectChild jobj = new ObjectChild();
+        LuaValue obj = of(jobj);
+
+        assertEquals("ObjectChild", g.get("ctype").call(obj).checkjstring());
+        assertEquals(1, obj.get("inherited").call(obj).checkint());
+        assertEquals(2, obj.get("overridden").call(obj).checkint());
+        assertEquals(3, obj.get("own").call(obj).checkint());
+        assertEquals("parent", g.get("tostring").call(obj).checkjstring());
+
+        assertEquals(3, obj.get("parentField").checkint());
+        assertEquals(7, obj.get("childField").checkint());
+        obj.set("parentField", valueOf(5));
+        assertEquals(5, jobj.parentField);
+
+        // parents don't see their children's members
+        LuaValue parent = of(new ObjectParent());
+        assertEquals(1, parent.get("overridden").call(parent).checkint());
+        assertEquals(LuaValue.NIL, parent.get("own"));
+    }
+
+}
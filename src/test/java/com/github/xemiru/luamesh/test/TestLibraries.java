@@ -29,9 +29,16 @@ import org.junit.Test;
 import org.luaj.vm2.Globals;
 import org.luaj.vm2.LuaValue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static com.github.xemiru.luamesh.LuaObjectValue.of;
 import static com.github.xemiru.luamesh.test.Utility.init;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class TestLibraries {
 
@@ -50,4 +57,41 @@ public class TestLibraries {
         assertEquals(obj, lib.get("objMethod").call(obj));
     }
 
+    @Test
+    public void sharedLibraries() {
+        ObjectLibraries other = new ObjectLibraries();
+        other.name = "other";
+
+        LuaValue lib = this.g.get("lib");
+        LuaValue lib2 = of(other).toLibrary();
+
+        // same metatable, but functions are bound to their own library
+        assertSame(lib.getmetatable(), lib2.getmetatable());
+        assertSame(lib.get("name"), lib.get("name"));
+        assertEquals("lib", lib.get("name").call().checkjstring());
+        assertEquals("other", lib2.get("name").call().checkjstring());
+        assertEquals("lib", g.get("tostring").call(lib).checkjstring());
+        assertEquals("other", g.get("tostring").call(lib2).checkjstring());
+    }
+
+    @Test
+    public void concurrentLookups() throws Exception {
+        LuaValue lib = of(new ObjectLibraries()).toLibrary();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<LuaValue>> lookups = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                lookups.add(executor.submit(() -> lib.get("name")));
+            }
+
+            // every thread sees the one method bound to this library
+            LuaValue first = lookups.get(0).get();
+            for (Future<LuaValue> lookup : lookups) {
+                assertSame(first, lookup.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
 }
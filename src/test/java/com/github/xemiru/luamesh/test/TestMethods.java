@@ -23,17 +23,29 @@
  */
 package com.github.xemiru.luamesh.test;
 
+import com.github.xemiru.luamesh.DispatchResult;
+import com.github.xemiru.luamesh.LuaMesh;
+import com.github.xemiru.luamesh.LuaObjectValue;
 import com.github.xemiru.luamesh.LuaUtil;
 import com.github.xemiru.luamesh.test.objects.ObjectMethods;
 import org.junit.Before;
 import org.junit.Test;
 import org.luaj.vm2.Globals;
 import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaString;
 import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+import java.util.Arrays;
+import java.util.List;
 
 import static com.github.xemiru.luamesh.LuaObjectValue.*;
 import static com.github.xemiru.luamesh.test.Utility.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class TestMethods {
@@ -89,4 +101,143 @@ public class TestMethods {
         assertEquals(other, obj.lt(other));
         assertEquals(other, obj.lteq(other));
     }
+
+    @Test
+    public void frozenMetatable() {
+        LuaValue obj = this.g.get("obj");
+
+        try {
+            obj.getmetatable().get(INDEX).set("voidMethod", NIL);
+            fail("Shared metatable was modified.");
+        } catch (LuaError e) {
+            assertEquals(false, obj.get("voidMethod").isnil());
+        }
+
+        try {
+            obj.getmetatable().set(ADD, NIL);
+            fail("Shared metatable was modified.");
+        } catch (LuaError e) {
+            assertEquals(false, obj.getmetatable().get(ADD).isnil());
+        }
+    }
+
+    @Test
+    public void conversions() {
+        LuaValue obj = this.g.get("obj");
+
+        // integers widen to doubles, whichever way the method is called
+        assertEquals(3D, obj.get("doubleMethod").call(obj, valueOf(1), valueOf(2)).checkdouble(), 0);
+        assertEquals(3D, g.load("return obj:doubleMethod(1, 2)").call().checkdouble(), 0);
+
+        assertError("bad argument: integer expected, got number", () -> obj.get("intMethod").call(obj, valueOf(1.5),
+            valueOf(2)));
+        assertError("bad argument: integer expected, got string", () -> obj.get("intMethod").call(obj, valueOf("a"),
+            valueOf(2)));
+        assertError("attempt to index local 'self'", () -> obj.get("intMethod").call());
+
+        // a self of the wrong type goes through the method handle, as before
+        assertError("bad argument", () -> obj.get("intMethod").call(of(new Object()), valueOf(1), valueOf(2)));
+    }
+
+    @Test
+    public void stringViews() {
+        LuaValue obj = this.g.get("obj");
+
+        // binary strings pass through without being decoded
+        LuaString binary = LuaString.valueOf(new byte[]{0, (byte) 0xFF, 'a'});
+        assertSame(binary, obj.get("stringMethod").call(obj, binary));
+        assertEquals(binary, obj.get("bytesMethod").call(obj, binary));
+        assertEquals(binary.substring(1, 3), obj.get("bufferMethod").call(obj, binary));
+
+        // byte arrays are copies, so Java writing to them can't change the Lua string
+        byte[] bytes = (byte[]) LuaUtil.toJava(binary, byte[].class);
+        assertNotSame(binary.m_bytes, bytes);
+        bytes[0] = 'x';
+        assertEquals(0, binary.luaByte(0));
+
+        assertEquals("view", g.load("return obj:sequenceMethod('abc')").call().checkjstring());
+        assertEquals("decoded", g.load("return obj:sequenceMethod('\\195\\169')").call().checkjstring());
+        assertEquals("abc", LuaUtil.toJava(valueOf("abc"), CharSequence.class).toString());
+
+        // only the declared return type makes a string; a CharSequence returned as itself stays an object
+        assertEquals("cba", g.load("return obj:builtMethod('abc')").call().checkjstring());
+        assertTrue(g.load("return obj:builderMethod('abc')").call() instanceof LuaObjectValue);
+    }
+
+    @Test
+    public void multipleReturns() {
+        Varargs tuple = g.load("return obj:tupleMethod(7, 3)").invoke();
+        assertEquals(3, tuple.narg());
+        assertEquals(3, tuple.arg(1).checkint());
+        assertEquals(7D, tuple.arg(2).checkdouble(), 0);
+        assertEquals("range", tuple.arg(3).checkjstring());
+
+        // private fields, in the order the annotation names them
+        Varargs named = g.load("return obj:privateTupleMethod(4)").invoke();
+        assertEquals(2, named.narg());
+        assertEquals("items", named.arg(1).checkjstring());
+        assertEquals(4, named.arg(2).checkint());
+
+        // the outer instance of an inner class isn't returned
+        Varargs pair = g.load("return obj:pairMethod(1, 2)").invoke();
+        assertEquals(2, pair.narg());
+        assertEquals(1, pair.arg(1).checkint());
+        assertEquals(2, pair.arg(2).checkint());
+
+        assertEquals(21, g.load("local lo, hi = obj:tupleMethod(7, 3) return lo * hi").call().checkint());
+        assertEquals(-1, g.load("local b, a = obj:varargsMethod(1, 2) return a - b").call().checkint());
+    }
+
+    @Test
+    public void variadic() {
+        assertEquals("a 1 true", g.load("return obj:formatMethod('%s %s %s', 'a', 1, true)").call().checkjstring());
+        assertEquals("none", g.load("return obj:formatMethod('none')").call().checkjstring());
+        assertEquals(6.5, g.load("return obj:sumMethod(1, 2, 3.5)").call().checkdouble(), 0);
+        assertEquals(0, g.load("return obj:sumMethod()").call().checkdouble(), 0);
+        assertEquals("string number table", g.load("return obj:listMethod('a', 2.5, {})").call().checkjstring());
+
+        // unmarked, a List parameter is a single argument, such as a Java list handed to Lua
+        g.set("list", of(Arrays.asList("a", "b", "c")));
+        assertEquals(3, g.load("return obj:sizeMethod(list)").call().checkint());
+
+        Varargs rest = g.load("return obj:restMethod(1, 2, 3)").invoke();
+        assertEquals(2, rest.narg());
+        assertEquals(3, rest.arg(2).checkint());
+
+        assertError("bad argument", () -> g.load("return obj:sumMethod(1, 'a')").call());
+    }
+
+    private void assertError(String expected, Runnable call) {
+        try {
+            call.run();
+            fail("Call didn't fail.");
+        } catch (LuaError e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(expected));
+        }
+    }
+
+    @Test
+    public void dispatch() {
+        List<ObjectMethods> objects = Arrays.asList(new ObjectMethods(), new ObjectMethods(), new ObjectMethods(),
+            new ObjectMethods(), new ObjectMethods());
+
+        LuaValue sum = g.load("local self, args = ... return args[1] + args[2]");
+        of(objects.get(0)).set("intMethod", sum);
+        of(objects.get(1)); // wrapped, but not overridden
+        of(objects.get(2)).set("intMethod", g.load("local self, args = ... return args[1] * args[2]"));
+        of(objects.get(3)).set("intMethod", g.load("error('no')"));
+        of(objects.get(4)).set("intMethod", sum);
+
+        DispatchResult result = LuaMesh.dispatchAll(objects, "intMethod", 3, 4);
+        assertEquals(4, result.getDispatched());
+        assertEquals(true, result.hasErrors());
+        assertEquals(Arrays.asList(7, null, 12, null, 7), Arrays.asList(result.getResults()));
+        assertNull(result.getErrors()[0]);
+        assertEquals(true, result.getErrors()[3].getMessage().contains("no"));
+
+        // unbound methods are reported instead of looked up as nil
+        assertError("no method missingMethod", () -> LuaMesh.dispatchAll(objects, "missingMethod"));
+        assertError("no method missingMethod", () -> LuaMesh.lua(objects.get(0), "missingMethod", () -> 1));
+    }
+
 }
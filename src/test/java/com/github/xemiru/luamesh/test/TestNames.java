@@ -29,6 +29,7 @@ import com.github.xemiru.luamesh.test.objects.ObjectNames;
 import org.junit.Before;
 import org.junit.Test;
 import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
 
 import static com.github.xemiru.luamesh.LuaObjectValue.of;
@@ -52,6 +53,8 @@ public class TestNames {
         LuaValue obj = g.get("obj");
 
         assertEquals("luanames", g.get("ctype").call(obj).checkjstring());
+        assertEquals("table", g.get("ctype").call(new LuaTable()).checkjstring());
+        assertEquals("number", g.get("ctype").call(LuaValue.valueOf(4)).checkjstring());
         assertEquals(NIL, obj.get("a"));
         assertNotEquals(NIL, obj.get("fielda"));
 
@@ -0,0 +1,143 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh.test;
+
+import com.github.xemiru.luamesh.LuaPool;
+import com.github.xemiru.luamesh.test.objects.ObjectLibraries;
+import org.junit.Before;
+import org.junit.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import static com.github.xemiru.luamesh.LuaObjectValue.of;
+import static com.github.xemiru.luamesh.test.Utility.init;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestPool {
+
+    private static final Object SHARED = new Object();
+
+    private LuaPool pool;
+
+    @Before
+    public void before() {
+        init();
+        this.pool = new LuaPool(2, JsePlatform::standardGlobals, g -> {
+            g.set("lib", of(new ObjectLibraries()).toLibrary());
+            g.set("shared", of(SHARED));
+            g.load("config = { nested = { value = 1 } }").call();
+        });
+    }
+
+    @Test
+    public void pool() throws InterruptedException {
+        assertEquals(2, pool.available());
+
+        Globals g = pool.acquire();
+        LuaValue lib = g.get("lib");
+        assertEquals(1, pool.available());
+        assertEquals(4, g.load("return lib.objMethod(4)").call().checkint());
+
+        // leave some garbage around
+        g.load("x = 5; lib.objMethod = nil; string.foo = 'bar'; setmetatable(_G, {})").call();
+        pool.release(g);
+        assertEquals(2, pool.available());
+
+        // make sure we get the same runtime back
+        Globals other = pool.acquire();
+        Globals g2 = other == g ? other : pool.acquire();
+        assertSame(g, g2);
+
+        assertEquals(LuaValue.NIL, g.get("x"));
+        assertEquals(LuaValue.NIL, g.get("string").get("foo"));
+        assertEquals(null, g.getmetatable());
+        assertSame(lib, g.get("lib"));
+        assertEquals(4, g.load("return lib.objMethod(4)").call().checkint());
+
+        pool.release(g2);
+        if (other != g2) {
+            pool.release(other);
+        }
+    }
+
+    @Test
+    public void deepReset() throws InterruptedException {
+        Globals g = pool.acquire();
+        g.load("package.loaded.mod = { loaded = true }; config.nested.value = 2; config.nested.extra = {}").call();
+        pool.release(g);
+
+        Globals g2 = pool.acquire();
+        Globals other = g2 == g ? null : pool.acquire();
+        assertEquals(LuaValue.NIL, g.get("package").get("loaded").get("mod"));
+        assertEquals(1, g.get("config").get("nested").get("value").checkint());
+        assertEquals(LuaValue.NIL, g.get("config").get("nested").get("extra"));
+
+        pool.release(g2);
+        if (other != null) {
+            pool.release(other);
+        }
+    }
+
+    @Test
+    public void isolatedWrappers() throws InterruptedException {
+        Globals a = pool.acquire();
+        Globals b = pool.acquire();
+        assertNotSame(a.get("shared"), b.get("shared"));
+
+        // scripts storing functions in a wrapper only see their own
+        a.load("shared.f = function() return 1 end").call();
+        assertEquals(LuaValue.NIL, b.get("shared").get("f"));
+        assertSame(b.get("shared"), of(SHARED)); // b was acquired last
+
+        pool.release(a);
+        pool.release(b);
+        assertEquals(LuaValue.NIL, a.get("shared").get("f"));
+        assertNotSame(a.get("shared"), of(SHARED));
+    }
+
+    @Test
+    public void confinement() throws InterruptedException {
+        Globals g = pool.acquire();
+        boolean[] rejected = {false};
+        Thread thread = new Thread(() -> {
+            try {
+                pool.release(g);
+            } catch (IllegalStateException expected) {
+                rejected[0] = true;
+            }
+        });
+
+        thread.start();
+        thread.join();
+
+        assertTrue("Runtime was released by another thread.", rejected[0]);
+        assertEquals(1, pool.available());
+        pool.release(g);
+    }
+
+}
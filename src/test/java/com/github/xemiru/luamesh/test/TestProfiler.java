@@ -0,0 +1,93 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh.test;
+
+import com.github.xemiru.luamesh.MeshProfiler;
+import com.github.xemiru.luamesh.test.objects.ObjectMethods;
+import org.junit.Before;
+import org.junit.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.xemiru.luamesh.LuaObjectValue.of;
+import static com.github.xemiru.luamesh.test.Utility.init;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestProfiler {
+
+    private Globals g;
+
+    @Before
+    public void before() {
+        init();
+        this.g = JsePlatform.standardGlobals();
+        this.g.set("obj", of(new ObjectMethods()));
+    }
+
+    @Test
+    public void profile() throws InterruptedException, IOException {
+        MeshProfiler profiler = new MeshProfiler();
+        profiler.attach(g);
+        profiler.start();
+
+        g.load("local function busy(n) for i = 1, n do obj:intMethod(i, i) end end\n"
+            + "local start = os.clock() while os.clock() - start < 0.3 do busy(100) end", "=busy").call();
+
+        profiler.stop();
+        assertNull("Hooks weren't removed.", g.debuglib);
+        assertTrue(profiler.getSampleCount() > 0);
+
+        Map<String, Long> samples = profiler.getSamples();
+        boolean found = false;
+        for (String stack : samples.keySet()) {
+            // the main chunk, then busy, then the method
+            if (stack.contains("busy:0;busy:1;ObjectMethods.intMethod;")) {
+                found = true;
+            }
+        }
+
+        assertTrue("No samples inside the bound method: " + samples.keySet(), found);
+
+        Path file = Files.createTempFile("luamesh", ".folded");
+        try {
+            profiler.writeCollapsed(file);
+            List<String> lines = Files.readAllLines(file);
+            assertEquals(samples.size(), lines.size());
+            for (String line : lines) {
+                assertTrue(line, line.matches(".+ \\d+"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh.test;
+
+import com.github.xemiru.luamesh.ScriptCache;
+import com.github.xemiru.luamesh.test.objects.ObjectMethods;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.compiler.DumpState;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.github.xemiru.luamesh.LuaObjectValue.of;
+import static com.github.xemiru.luamesh.test.Utility.init;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestScripts {
+
+    private static final String SCRIPT = "count = (count or 0) + 1 return obj:intMethod(count, 10)";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shared() {
+        init();
+        ScriptCache cache = new ScriptCache();
+        Globals a = runtime();
+        Globals b = runtime();
+
+        assertEquals(11, cache.load(a, SCRIPT, "=script").call().checkint());
+        assertEquals(12, cache.load(a, SCRIPT, "=script").call().checkint());
+        assertEquals(11, cache.load(b, SCRIPT, "=script").call().checkint());
+
+        assertEquals(1, cache.getSize());
+        assertSame(cache.compile(SCRIPT, "=script"), cache.compile(SCRIPT, "=script"));
+    }
+
+    @Test
+    public void disk() throws Exception {
+        init();
+        Path dir = folder.newFolder().toPath();
+        new ScriptCache(dir).compile(SCRIPT, "=script");
+
+        File[] stored = dir.toFile().listFiles();
+        assertEquals(1, stored.length);
+        assertTrue(stored[0].getName().endsWith(".luac"));
+
+        // a new cache reads the dumped chunk instead of compiling the source
+        try (OutputStream out = Files.newOutputStream(stored[0].toPath())) {
+            DumpState.dump(new ScriptCache().compile("return 42", "=script"), out, false);
+        }
+
+        assertEquals(42, new ScriptCache(dir).load(runtime(), SCRIPT, "=script").call().checkint());
+
+        // corrupt chunks are compiled again
+        Files.write(stored[0].toPath(), new byte[] { 1, 2, 3 });
+        assertEquals(11, new ScriptCache(dir).load(runtime(), SCRIPT, "=script").call().checkint());
+    }
+
+    @Test(expected = LuaError.class)
+    public void syntaxError() {
+        new ScriptCache().compile("return +", "=broken");
+    }
+
+    @Test
+    public void java() {
+        try {
+            Class.forName("org.apache.bcel.generic.ClassGen");
+        } catch (ClassNotFoundException e) {
+            Assume.assumeNoException(e);
+        }
+
+        init();
+        ScriptCache cache = new ScriptCache(null, true);
+        Globals g = runtime();
+        assertEquals(11, cache.load(g, SCRIPT, "=script").call().checkint());
+        assertEquals(12, cache.load(g, SCRIPT, "=script").call().checkint());
+    }
+
+    private Globals runtime() {
+        Globals g = JsePlatform.standardGlobals();
+        g.set("obj", of(new ObjectMethods()));
+        return g;
+    }
+
+}
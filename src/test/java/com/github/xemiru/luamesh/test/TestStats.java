@@ -0,0 +1,124 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh.test;
+
+import com.github.xemiru.luamesh.BindingStats;
+import com.github.xemiru.luamesh.LuaMesh;
+import com.github.xemiru.luamesh.WrapperStats;
+import com.github.xemiru.luamesh.test.objects.ObjectMethods;
+import org.junit.Before;
+import org.junit.Test;
+import org.luaj.vm2.Globals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.github.xemiru.luamesh.LuaObjectValue.of;
+import static com.github.xemiru.luamesh.test.Utility.init;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestStats {
+
+    private Globals g;
+
+    @Before
+    public void before() {
+        this.g = init();
+        LuaMesh.resetStats();
+    }
+
+    @Test
+    public void javaStats() {
+        g.set("stats", of(new ObjectMethods()));
+        g.load("for i = 1, 100 do stats:intMethod(i, i) end").call();
+        g.load("for i = 1, 10 do pcall(stats.intMethod, stats, 'a', 'b') end").call();
+
+        BindingStats.Snapshot stats = find("ObjectMethods.intMethod");
+        assertEquals(110, stats.getCalls());
+        assertEquals(10, stats.getErrors());
+        assertTrue(stats.getPercentile(50) > 0);
+        assertTrue(stats.getPercentile(50) <= stats.getPercentile(99));
+        assertTrue(stats.getPercentile(100) <= stats.getMax());
+    }
+
+    @Test
+    public void luaStats() {
+        ObjectMethods obj = new ObjectMethods();
+        of(obj).set("intMethod", g.load("return 5"));
+
+        LuaMesh.dispatchAll(Collections.singletonList(obj), "intMethod", 1, 2);
+        LuaMesh.dispatchAll(Collections.singletonList(obj), "intMethod", 3, 4);
+
+        // errors count too
+        of(obj).set("intMethod", g.load("error('no')"));
+        assertTrue(LuaMesh.dispatchAll(Collections.singletonList(obj), "intMethod", 1, 2).hasErrors());
+
+        BindingStats.Snapshot stats = find("ObjectMethods.intMethod", true);
+        assertEquals(3, stats.getCalls());
+        assertEquals(1, stats.getErrors());
+    }
+
+    @Test
+    public void wrapperStats() {
+        LuaMesh.resetWrapperStats();
+        List<ObjectMethods> objs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            objs.add(new ObjectMethods());
+            of(objs.get(i));
+            of(objs.get(i));
+        }
+
+        WrapperStats stats = LuaMesh.getWrapperStats();
+        assertEquals(3, stats.getHits());
+        assertEquals(3, stats.getMisses());
+        assertEquals(0.5, stats.getHitRate(), 0);
+
+        WrapperStats.Usage usage = stats.getTypes().get(ObjectMethods.class);
+        assertNotNull(usage);
+        assertEquals("ObjectMethods", usage.getName());
+        assertTrue(usage.getLive() >= 3);
+        assertTrue(usage.getBytesPerWrapper() > 0);
+        assertTrue(stats.getEstimatedBytes() >= usage.getEstimatedBytes());
+    }
+
+    private BindingStats.Snapshot find(String name) {
+        return find(name, false);
+    }
+
+    private BindingStats.Snapshot find(String name, boolean lua) {
+        BindingStats.Snapshot found = null;
+        for (BindingStats.Snapshot stats : LuaMesh.getStats()) {
+            if (stats.getName().equals(name) && stats.isLua() == lua) {
+                found = stats;
+            }
+        }
+
+        assertNotNull("No stats for " + name, found);
+        return found;
+    }
+
+}
@@ -0,0 +1,96 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh.test;
+
+import com.github.xemiru.luamesh.LuaMesh;
+import com.github.xemiru.luamesh.LuaPool;
+import com.github.xemiru.luamesh.LuaStringCache;
+import com.github.xemiru.luamesh.test.objects.ObjectMethods;
+import org.junit.Before;
+import org.junit.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaString;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import static com.github.xemiru.luamesh.LuaObjectValue.of;
+import static com.github.xemiru.luamesh.test.Utility.init;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TestStrings {
+
+    private Globals g;
+
+    @Before
+    public void before() {
+        g = init();
+        LuaMesh.stringCache.clear();
+    }
+
+    @Test
+    public void eviction() {
+        LuaStringCache cache = new LuaStringCache(2);
+        LuaString a = cache.valueOf("a");
+        assertSame(a, cache.valueOf("a"));
+
+        // "a" was hit, so the clock passes over it and evicts "b"
+        cache.valueOf("b");
+        cache.valueOf("c");
+        assertSame(a, cache.valueOf("a"));
+        assertEquals(2, cache.getHits());
+
+        cache.valueOf("b");
+        assertEquals(2, cache.getSize());
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void internedMethod() {
+        g.set("obj", of(new ObjectMethods()));
+        LuaValue first = g.load("return obj:internMethod(1)").call();
+        LuaValue second = g.load("return obj:internMethod(1)").call();
+
+        assertEquals("item1", first.checkjstring());
+        assertSame(first, second);
+        assertEquals(1, LuaMesh.stringCache.getHits());
+        assertEquals(1, LuaMesh.stringCache.getMisses());
+    }
+
+    @Test
+    public void pooledRuntimes() throws InterruptedException {
+        Object obj = new ObjectMethods();
+        LuaPool pool = new LuaPool(2, JsePlatform::standardGlobals, globals -> globals.set("obj", of(obj)));
+        for (int i = 0; i < 4; i++) {
+            assertEquals("item1", pool.apply(globals -> globals.load("return obj:internMethod(1)").call())
+                .checkjstring());
+        }
+
+        // each runtime interns into a cache of its own, leaving the shared one alone
+        assertEquals(0, LuaMesh.stringCache.getHits());
+        assertEquals(0, LuaMesh.stringCache.getMisses());
+    }
+
+}
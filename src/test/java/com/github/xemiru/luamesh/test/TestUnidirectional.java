@@ -31,6 +31,7 @@ import static org.luaj.vm2.LuaValue.NIL;
 import static org.luaj.vm2.LuaValue.valueOf;
 
 import com.github.xemiru.luamesh.LuaObjectValue;
+import com.github.xemiru.luamesh.test.objects.UnidirectionalLazyTarget;
 import com.github.xemiru.luamesh.test.objects.UnidirectionalTarget;
 import com.github.xemiru.luamesh.test.objects.UnidirectionalTargetB;
 import org.junit.Before;
@@ -86,4 +87,13 @@ public class TestUnidirectional {
         // check for new metaentry added by delegate
         assertEquals(obj, obj.add(obj));
     }
+
+    @Test
+    public void unidirectionalLazy() {
+        LuaValue obj = of(new UnidirectionalLazyTarget());
+
+        assertEquals("UnidirectionalLazyTarget", g.get("ctype").call(obj).checkjstring());
+        assertEquals(5, obj.get("add").call(obj, valueOf(2), valueOf(3)).checkint());
+        assertEquals(obj, obj.get("giveStuff").call(obj));
+    }
 }
@@ -25,6 +25,8 @@ package com.github.xemiru.luamesh.test;
 
 import com.github.xemiru.luamesh.FunctionCType;
 import com.github.xemiru.luamesh.LuaMesh;
+import com.github.xemiru.luamesh.test.objects.UnidirectionalDirectTarget;
+import com.github.xemiru.luamesh.test.objects.UnidirectionalLazyTarget;
 import com.github.xemiru.luamesh.test.objects.UnidirectionalTarget;
 import org.junit.Assert;
 import org.luaj.vm2.Globals;
@@ -46,10 +48,16 @@ public class Utility {
     public static Globals init() {
         if(g == null) {
             LuaMesh.debug = System.out::println;
+            LuaMesh.instrument = true;
+            register("ObjectAllocations");
+            register("ObjectAsync");
             register("ObjectFields");
             register("ObjectLibraries");
             register("ObjectMethods");
             register("ObjectNames");
+            register("ObjectProperties");
+            register("ObjectParent");
+            register("ObjectChild");
             register("UnidirectionalDelegate");
             LuaMesh.register(UnidirectionalTarget.class, name -> {
                 switch(name) {
@@ -58,6 +66,11 @@ public class Utility {
                 }
             });
 
+            LuaMesh.lazyUnidirectional = true;
+            LuaMesh.register(UnidirectionalLazyTarget.class, null);
+            LuaMesh.register(UnidirectionalDirectTarget.class, null);
+            LuaMesh.lazyUnidirectional = false;
+
             try {
                 LuaMesh.init();
             } catch(Throwable any) {
@@ -65,6 +78,13 @@ public class Utility {
                 Assert.fail("Initialization failed.");
             }
 
+            LuaMesh.instrument = false;
+
+            // only this type calls through direct invokers, so everything else tests the default path
+            LuaMesh.directInvokers = true;
+            LuaMesh.getMeta(UnidirectionalDirectTarget.class);
+            LuaMesh.directInvokers = false;
+
             g = JsePlatform.debugGlobals();
             g.set("ctype", new FunctionCType());
         }
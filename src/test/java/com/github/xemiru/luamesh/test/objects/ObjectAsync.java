@@ -0,0 +1,65 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh.test.objects;
+
+import com.github.xemiru.luamesh.LuaType;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Set up to test asynchronous methods.
+ */
+@LuaType
+public class ObjectAsync {
+
+    @LuaType
+    public CompletableFuture<Integer> later(int x) {
+        return CompletableFuture.supplyAsync(() -> {
+            sleep();
+            return x * 2;
+        });
+    }
+
+    @LuaType(blocking = true)
+    public int slow(int x) {
+        sleep();
+        return x + 1;
+    }
+
+    @LuaType
+    public CompletableFuture<Integer> fail() {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        future.completeExceptionally(new IllegalStateException("nope"));
+        return future;
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
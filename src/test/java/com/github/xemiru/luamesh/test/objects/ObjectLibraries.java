@@ -26,6 +26,7 @@ package com.github.xemiru.luamesh.test.objects;
 import static com.github.xemiru.luamesh.test.Utility.println;
 
 import com.github.xemiru.luamesh.LuaType;
+import com.github.xemiru.luamesh.LuaType.MetaEntry;
 
 @LuaType
 public class ObjectLibraries {
@@ -34,10 +35,22 @@ public class ObjectLibraries {
     // we need to pass the owning object to any of these methods in Lua.
     // Fields' behavior don't change.
 
+    public String name = "lib";
+
     @LuaType
     public Object objMethod(Object obj) {
         println("Object method returns the given object back.");
         return obj;
     }
 
+    @LuaType
+    public String name() {
+        return name;
+    }
+
+    @LuaType(entry = MetaEntry.TOSTRING)
+    public String l_tostring() {
+        return name;
+    }
+
 }
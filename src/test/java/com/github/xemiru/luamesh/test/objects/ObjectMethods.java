@@ -26,6 +26,12 @@ package com.github.xemiru.luamesh.test.objects;
 import static com.github.xemiru.luamesh.test.Utility.println;
 
 import com.github.xemiru.luamesh.LuaType;
+import org.luaj.vm2.LuaString;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+import java.nio.ByteBuffer;
+import java.util.List;
 
 import static com.github.xemiru.luamesh.LuaType.MetaEntry.*;
 
@@ -59,6 +65,97 @@ public class ObjectMethods {
         return obj;
     }
 
+    @LuaType
+    public LuaString stringMethod(LuaString str) {
+        return str;
+    }
+
+    @LuaType
+    public byte[] bytesMethod(byte[] bytes) {
+        return bytes;
+    }
+
+    @LuaType
+    public ByteBuffer bufferMethod(ByteBuffer buffer) {
+        buffer.get(); // skip the first byte
+        return buffer;
+    }
+
+    @LuaType
+    public String sequenceMethod(CharSequence seq) {
+        return seq.getClass() == String.class ? "decoded" : "view";
+    }
+
+    @LuaType
+    public CharSequence builtMethod(String str) {
+        return new StringBuilder(str).reverse();
+    }
+
+    @LuaType
+    public StringBuilder builderMethod(String str) {
+        return new StringBuilder(str);
+    }
+
+    @LuaType
+    public ObjectTuple tupleMethod(int a, int b) {
+        return new ObjectTuple(Math.min(a, b), Math.max(a, b), "range");
+    }
+
+    @LuaType
+    public ObjectPrivateTuple privateTupleMethod(int count) {
+        return new ObjectPrivateTuple(count, "items");
+    }
+
+    @LuaType
+    public Pair pairMethod(int a, int b) {
+        return new Pair(a, b);
+    }
+
+    @LuaType
+    public Varargs varargsMethod(int a, int b) {
+        return LuaValue.varargsOf(LuaValue.valueOf(b), LuaValue.valueOf(a));
+    }
+
+    @LuaType
+    public String formatMethod(String format, Object... args) {
+        return String.format(format, args);
+    }
+
+    @LuaType
+    public double sumMethod(double... values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+
+        return sum;
+    }
+
+    @LuaType(rest = true)
+    public String listMethod(List<LuaValue> values) {
+        StringBuilder types = new StringBuilder();
+        for (LuaValue value : values) {
+            types.append(value.typename()).append(' ');
+        }
+
+        return types.toString().trim();
+    }
+
+    @LuaType
+    public int sizeMethod(List<?> list) {
+        return list.size();
+    }
+
+    @LuaType
+    public Varargs restMethod(int skipped, Varargs rest) {
+        return rest;
+    }
+
+    @LuaType(intern = true)
+    public String internMethod(int id) {
+        return "item" + id;
+    }
+
     @LuaType
     public void voidMethod() {
         println("Void method does nothing.");
@@ -159,4 +256,22 @@ public class ObjectMethods {
         println("The object was added in Lua.");
         return other;
     }
+
+    /**
+     * An inner tuple, holding a synthetic reference to its
+     * outer instance that isn't one of its values.
+     */
+    @LuaType(tuple = true)
+    public class Pair {
+
+        public int a;
+        public int b;
+
+        Pair(int a, int b) {
+            this.a = a;
+            this.b = b;
+        }
+
+    }
+
 }
@@ -0,0 +1,56 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 Tellerva, Marc Lawrence G.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.xemiru.luamesh.test.objects;
+
+import com.github.xemiru.luamesh.LuaType;
+
+/**
+ * Set up to test getter and setter properties.
+ */
+@LuaType
+public class ObjectProperties {
+
+    public int sets = 0;
+
+    private String label = "default";
+    private boolean enabled = true;
+
+    // read/write property
+    @LuaType(property = true) public String getLabel() { return this.label; }
+    @LuaType(property = true) public void setLabel(String label) {
+        this.label = label;
+        this.sets++;
+    }
+
+    // read-only property
+    @LuaType(property = true) public int getSize() { return this.label.length(); }
+
+    // boolean property
+    @LuaType(property = true) public boolean isEnabled() { return this.enabled; }
+    @LuaType(property = true) public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    // an accessor not marked as a property, which stays a plain method
+    @LuaType public int getCount() { return 4; }
+
+}